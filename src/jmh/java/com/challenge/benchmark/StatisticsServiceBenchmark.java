@@ -0,0 +1,213 @@
+package com.challenge.benchmark;
+
+import com.challenge.service.CachedClock;
+import com.challenge.service.StatisticsService;
+import com.challenge.service.TransactionBatch;
+import com.challenge.service.TransactionLog;
+import com.challenge.service.TransactionQueue;
+import com.challenge.transfer.StatisticsOutput;
+import com.challenge.transfer.TransactionBatchOutput;
+import com.challenge.transfer.TransactionInput;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link StatisticsService} ingestion and query paths.
+ * <p>
+ * Run with {@code mvn -Pjmh test-compile exec:exec}; pass JMH options through {@code -Djmh.args}, e.g.
+ * {@code -Djmh.args="StatisticsServiceBenchmark.addTransaction -t 8 -prof gc"} for multi-threaded ingestion or
+ * {@code -Djmh.args="StatisticsServiceBenchmark.getStatistics -p transactionTtl=10,60,3600"} for reads at varying
+ * bucket counts, also through {@code -p resolutionMillis=10,100,1000} or additional windows such as
+ * {@code -p windows=10s,5m}; {@code -p quantiles=} and {@code -p distinctPrecision=0} turn the percentile
+ * histograms and the distinct payer registers off and {@code -p storeMode=heap,direct} compares the bucket storage.
+ * {@code -p logDirectory=/tmp/log -p fsync=always,interval} measures ingestion with the write-ahead log and
+ * {@code -p clockTick=0,1} compares the system clock with a {@link CachedClock}.
+ * Throughput and sampled latency percentiles are reported for every benchmark.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsServiceBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+
+        @Param({"60"})
+        int transactionTtl;
+
+        @Param({"1000"})
+        long resolutionMillis;
+
+        @Param({""})
+        String windows;
+
+        @Param({"0"})
+        int stripes;
+
+        @Param({"heap"})
+        String storeMode;
+
+        @Param({"100000"})
+        int maxKeys;
+
+        @Param({"0.5,0.95,0.99"})
+        String quantiles;
+
+        @Param({"11"})
+        int distinctPrecision;
+
+        @Param({""})
+        String logDirectory;
+
+        @Param({"always"})
+        String fsync;
+
+        @Param({"0"})
+        long clockTick;
+
+        @Param({"0"})
+        int queueCapacity;
+
+        @Param({"block"})
+        String queueFull;
+
+        StatisticsService statisticsService;
+        TransactionLog transactionLog;
+        TransactionQueue transactionQueue;
+        Clock clock;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            statisticsService = new StatisticsService(transactionTtl, resolutionMillis, windows.split(","), 2, stripes,
+                    storeMode, 5000, maxKeys, quantiles.split(","), 0.01, distinctPrecision);
+            transactionLog = new TransactionLog(logDirectory, fsync, 100, 64 << 20, 16 << 20, 1000);
+            statisticsService.setTransactionLog(transactionLog);
+            clock = clockTick > 0 ? new CachedClock(clockTick) : Clock.systemUTC();
+            statisticsService.setClock(clock);
+            transactionQueue = new TransactionQueue(queueCapacity, queueFull);
+            statisticsService.setTransactionQueue(transactionQueue);
+            long now = clock.millis();
+            for (int second = 0; second <= transactionTtl; second++) {
+                statisticsService.addTransaction(new TransactionInput(10 + second, now - second * 1000L));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            transactionQueue.close();
+            transactionLog.close();
+            if (clock instanceof CachedClock) {
+                ((CachedClock) clock).close();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TransactionState {
+
+        final TransactionInput input = new TransactionInput();
+        int next;
+
+        /**
+         * @return a transaction with a timestamp that walks through every second of the window
+         */
+        TransactionInput uniform(ServiceState service) {
+            int second = next++ % service.transactionTtl;
+            input.setAmount(1 + second);
+            input.setTimestamp(service.clock.millis() - second * 1000L);
+            return input;
+        }
+
+        /**
+         * @return a transaction in the current second for a random key out of twice the key limit
+         */
+        TransactionInput keyed(ServiceState service) {
+            input.setAmount(1 + (next++ & 0xff));
+            input.setTimestamp(service.clock.millis());
+            input.setKey(ThreadLocalRandom.current().nextLong(2L * service.maxKeys));
+            return input;
+        }
+
+        /**
+         * @return a transaction in the current second
+         */
+        TransactionInput sameSecond(ServiceState service) {
+            input.setAmount(1 + (next++ & 0xff));
+            input.setTimestamp(service.clock.millis());
+            return input;
+        }
+    }
+
+    @Benchmark
+    public ResponseEntity addTransactionUniform(ServiceState service, TransactionState transaction) {
+        return service.statisticsService.addTransaction(transaction.uniform(service));
+    }
+
+    @Benchmark
+    public ResponseEntity addTransactionSameSecond(ServiceState service, TransactionState transaction) {
+        return service.statisticsService.addTransaction(transaction.sameSecond(service));
+    }
+
+    @Benchmark
+    public ResponseEntity addKeyedTransaction(ServiceState service, TransactionState transaction) {
+        return service.statisticsService.addTransaction(transaction.keyed(service));
+    }
+
+    @Benchmark
+    public StatisticsOutput getKeyedStatistics(ServiceState service) {
+        return service.statisticsService.getStatistics(ThreadLocalRandom.current().nextLong(2L * service.maxKeys));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public TransactionBatchOutput addTransactionsUniform(ServiceState service, TransactionState transaction) {
+        TransactionBatch batch = service.statisticsService.newBatch();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            TransactionInput input = transaction.uniform(service);
+            batch.add(input.getAmount(), input.getTimestamp());
+        }
+        return service.statisticsService.addTransactions(batch);
+    }
+
+    @Benchmark
+    public StatisticsOutput getStatistics(ServiceState service) {
+        return service.statisticsService.getStatistics();
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(3)
+    public ResponseEntity writeHeavyAdd(ServiceState service, TransactionState transaction) {
+        return service.statisticsService.addTransaction(transaction.uniform(service));
+    }
+
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public StatisticsOutput writeHeavyGet(ServiceState service) {
+        return service.statisticsService.getStatistics();
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(1)
+    public ResponseEntity readHeavyAdd(ServiceState service, TransactionState transaction) {
+        return service.statisticsService.addTransaction(transaction.uniform(service));
+    }
+
+    @Benchmark
+    @Group("readHeavy")
+    @GroupThreads(3)
+    public StatisticsOutput readHeavyGet(ServiceState service) {
+        return service.statisticsService.getStatistics();
+    }
+}
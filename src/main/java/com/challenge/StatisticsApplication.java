@@ -1,9 +1,14 @@
 package com.challenge;
 
+import com.challenge.service.CachedClock;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.time.Clock;
+
 @SpringBootApplication
 @EnableScheduling
 public class StatisticsApplication {
@@ -11,4 +16,13 @@ public class StatisticsApplication {
     public static void main(String[] args) throws Exception {
         SpringApplication.run(StatisticsApplication.class, args);
     }
+
+    /**
+     * @param tickMillis the tick of a {@link CachedClock} in milliseconds; 0 to read the system clock on every call
+     * @return the clock transactions are accepted and statistics are read at
+     */
+    @Bean
+    public Clock clock(@Value("${statistics.clock.tick:0}") long tickMillis) {
+        return tickMillis > 0 ? new CachedClock(tickMillis) : Clock.systemUTC();
+    }
 }
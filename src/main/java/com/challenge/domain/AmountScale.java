@@ -0,0 +1,147 @@
+package com.challenge.domain;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point scale of transaction amounts. Amounts are converted once into {@code long} minor units, e.g. cents for
+ * a scale of 2, and all aggregation is done in integer arithmetic. Rounding only happens when converting amounts in
+ * and statistics out.
+ */
+public class AmountScale {
+
+    private static final double MAX_UNITS = 0x1p63;
+    private static final double HALF_UP_MARGIN_ULPS = 4;
+    private static final double MAX_FAST_ULP = 0x1p-4;
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_FAST_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int scale;
+    private final double factor;
+
+    /**
+     * @param scale the number of decimal places kept, between 0 and 18
+     */
+    public AmountScale(int scale) {
+        if (scale < 0 || scale > 18) {
+            throw new IllegalArgumentException("Amount scale must be between 0 and 18: " + scale);
+        }
+        this.scale = scale;
+        this.factor = Math.pow(10, scale);
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Converts an amount into minor units, rounding its shortest decimal form half up to the scale like
+     * {@link #parseUnits(char[], int, int)} does, so that {@code 1.005} is 101 cents whether it was read as text or as
+     * a double. The scaled double is rounded directly unless it is within a few ulps of a half, where the binary value
+     * and the decimal form can round differently and the conversion goes through {@code BigDecimal}.
+     *
+     * @param amount the amount
+     * @return the amount in minor units
+     * @throws ArithmeticException if the amount does not fit into a {@code long} of minor units
+     */
+    public long toUnits(double amount) {
+        double scaled = amount * factor;
+        if (!(scaled > -MAX_UNITS && scaled < MAX_UNITS)) {
+            throw new ArithmeticException("Amount out of range: " + amount);
+        }
+        double ulp = Math.ulp(scaled);
+        if (ulp <= MAX_FAST_ULP && Math.abs(scaled - Math.floor(scaled) - 0.5) > HALF_UP_MARGIN_ULPS * ulp) {
+            return Math.round(scaled);
+        }
+        return BigDecimal.valueOf(amount).movePointRight(scale).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    /**
+     * Converts the decimal text of an amount into minor units, rounding half up to the scale. Plain decimals of up to
+     * 18 digits are converted without allocating; anything else, e.g. exponents, goes through {@code BigDecimal}.
+     *
+     * @param chars  the buffer holding the text
+     * @param offset the offset of the text in the buffer
+     * @param length the length of the text
+     * @return the amount in minor units
+     * @throws NumberFormatException if the text is not a decimal number
+     * @throws ArithmeticException   if the amount does not fit into a {@code long} of minor units
+     */
+    public long parseUnits(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0 || digits > MAX_FAST_DIGITS) {
+            return new BigDecimal(chars, offset, length).movePointRight(scale)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        }
+        int shift = scale - Math.max(fractionDigits, 0);
+        long units;
+        if (shift >= 0) {
+            units = Math.multiplyExact(mantissa, POWERS_OF_TEN[shift]);
+        } else {
+            long divisor = POWERS_OF_TEN[-shift];
+            units = mantissa / divisor;
+            if ((mantissa % divisor) * 2 >= divisor) {
+                units++;
+            }
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * @param units an amount in minor units
+     * @return the amount as a decimal
+     */
+    public BigDecimal toDecimal(long units) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    /**
+     * @param units an amount in minor units
+     * @return the amount as a decimal
+     */
+    public BigDecimal toDecimal(BigInteger units) {
+        return new BigDecimal(units, scale);
+    }
+
+    /**
+     * Divides a sum in minor units, rounding half up to the scale.
+     *
+     * @param units   the sum in minor units
+     * @param divisor the divisor, positive
+     * @return the quotient as a decimal
+     */
+    public BigDecimal divide(BigInteger units, long divisor) {
+        return toDecimal(units).divide(BigDecimal.valueOf(divisor), scale, RoundingMode.HALF_UP);
+    }
+}
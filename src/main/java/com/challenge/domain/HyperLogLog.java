@@ -0,0 +1,108 @@
+package com.challenge.domain;
+
+/**
+ * HyperLogLog estimation of the number of distinct ids from {@code 2^precision} byte registers.
+ * <p>
+ * An id is hashed to 64 bits; the first {@code precision} bits select a register and the register keeps the highest
+ * rank, the position of the first set bit in the rest of the hash. Register arrays are merged with a register-wise max,
+ * so the registers of time buckets can be combined into the registers of a window. The standard error of the estimate
+ * is about {@code 1.04 / sqrt(2^precision)}, e.g. 2.3% with the 2 KB of registers of precision 11.
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final int registerCount;
+    private final double alpha;
+
+    /**
+     * @param precision the number of hash bits that select a register, from 4 to 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16: " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.alpha = registerCount == 16 ? 0.673 : registerCount == 32 ? 0.697 : registerCount == 64 ? 0.709
+                : 0.7213 / (1 + 1.079 / registerCount);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public int getRegisterCount() {
+        return registerCount;
+    }
+
+    /**
+     * Hashes an id to the register it updates and the rank it offers, packed into an int as
+     * {@code register << 8 | rank}.
+     *
+     * @param id the id
+     * @return the packed register and rank
+     */
+    public int cellOf(long id) {
+        long hash = hash(id);
+        int register = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        return register << 8 | rank;
+    }
+
+    /**
+     * @param cell a packed register and rank
+     * @return the register of the cell
+     */
+    public static int registerOf(int cell) {
+        return cell >>> 8;
+    }
+
+    /**
+     * @param cell a packed register and rank
+     * @return the rank of the cell
+     */
+    public static byte rankOf(int cell) {
+        return (byte) cell;
+    }
+
+    /**
+     * Merges registers into target registers with a register-wise max.
+     *
+     * @param target    the registers to merge into
+     * @param registers the registers to merge
+     * @param offset    the offset of the registers to merge in their array
+     */
+    public static void merge(byte[] target, byte[] registers, int offset) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] = (byte) Math.max(target[i], registers[offset + i]);
+        }
+    }
+
+    /**
+     * Estimates the number of distinct ids, with linear counting while many registers are still empty.
+     *
+     * @param registers the registers
+     * @return the estimated number of distinct ids
+     */
+    public long estimate(byte[] registers) {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static long hash(long id) {
+        long hash = (id ^ (id >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,83 @@
+package com.challenge.domain;
+
+/**
+ * Logarithmic binning of amounts in minor units with a bounded relative error, in the style of DDSketch.
+ * <p>
+ * Bin {@code 0} holds the amounts that round to zero minor units and bin {@code i > 0} the amounts in
+ * {@code (gamma^(i-2), gamma^(i-1)]} with {@code gamma = (1 + accuracy) / (1 - accuracy)}. Every positive {@code long}
+ * has a bin, so a histogram is a fixed size array of counts that can be merged by adding counts, and a quantile read
+ * from the counts is within the relative accuracy of the exact quantile.
+ */
+public class LogHistogram {
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final int binCount;
+
+    /**
+     * @param relativeAccuracy the relative error of the quantiles, between 0 and 1 exclusive
+     */
+    public LogHistogram(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.binCount = binOf(Long.MAX_VALUE) + 1;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * @return the number of bins of a histogram
+     */
+    public int getBinCount() {
+        return binCount;
+    }
+
+    /**
+     * @param units an amount in minor units
+     * @return the bin of the amount
+     */
+    public int binOf(long units) {
+        if (units <= 0) {
+            return 0;
+        }
+        return 1 + (int) Math.ceil(Math.log(units) / logGamma);
+    }
+
+    /**
+     * @param bin a bin
+     * @return the amount in minor units that is within the relative accuracy of every amount of the bin
+     */
+    public double valueOf(int bin) {
+        if (bin == 0) {
+            return 0;
+        }
+        return 2 * Math.pow(gamma, bin - 1) / (gamma + 1);
+    }
+
+    /**
+     * Estimates a quantile from the counts of a histogram.
+     *
+     * @param counts   the count of every bin
+     * @param total    the sum of the counts, positive
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimated amount in minor units
+     */
+    public double quantile(long[] counts, long total, double quantile) {
+        double rank = quantile * (total - 1);
+        long cumulative = 0;
+        for (int bin = 0; bin < counts.length; bin++) {
+            cumulative += counts[bin];
+            if (cumulative > rank) {
+                return valueOf(bin);
+            }
+        }
+        return valueOf(counts.length - 1);
+    }
+}
@@ -1,44 +1,146 @@
 package com.challenge.domain;
 
+import java.math.BigInteger;
+
+/**
+ * Aggregate of transaction amounts in minor units. The sum is kept as a 128 bit two's complement integer split into a
+ * high and a low word, so it cannot overflow for any realistic number of transactions. A statistic can also carry the
+ * bin counts of a {@link LogHistogram} of the amounts and the {@link HyperLogLog} registers of the payers.
+ */
 public class Statistic {
 
-    private double sum;
-    private double max = Double.MIN_VALUE;
-    private double min = Double.MAX_VALUE;
+    private long sumHigh;
+    private long sumLow;
+    private long max = Long.MIN_VALUE;
+    private long min = Long.MAX_VALUE;
     private long count;
+    private long[] histogram;
+    private byte[] registers;
+
+    public Statistic() {
+    }
+
+    /**
+     * @param bins the number of histogram bins, see {@link LogHistogram#getBinCount()}
+     */
+    public Statistic(int bins) {
+        this.histogram = new long[bins];
+    }
+
+    /**
+     * @param bins      the number of histogram bins, see {@link LogHistogram#getBinCount()}; 0 for no histogram
+     * @param registers the number of distinct count registers, see {@link HyperLogLog#getRegisterCount()}; 0 for no
+     *                  registers
+     */
+    public Statistic(int bins, int registers) {
+        this.histogram = bins == 0 ? null : new long[bins];
+        this.registers = registers == 0 ? null : new byte[registers];
+    }
 
-    public Statistic(double amount) {
-        this.sum = amount;
-        this.max = amount;
-        this.min = amount;
-        this.count = 1;
+    public Statistic(long sumHigh, long sumLow, long count, long min, long max) {
+        this.sumHigh = sumHigh;
+        this.sumLow = sumLow;
+        this.count = count;
+        this.min = min;
+        this.max = max;
     }
 
     public Statistic merge(Statistic s2) {
-        this.sum += s2.getSum();
-        this.count += s2.getCount();
-        if (s2.getMax() > max) {
-            max = s2.getMax();
+        if (s2.getHistogram() != null) {
+            mergeHistogram(s2.getHistogram());
+        }
+        if (s2.getRegisters() != null) {
+            mergeRegisters(s2.getRegisters(), 0);
+        }
+        return merge(s2.getSumHigh(), s2.getSumLow(), s2.getCount(), s2.getMin(), s2.getMax());
+    }
+
+    /**
+     * Adds histogram bin counts to the histogram of this statistic, if it has one.
+     *
+     * @param counts the count of every bin
+     * @return this statistic
+     */
+    public Statistic mergeHistogram(long[] counts) {
+        if (histogram != null) {
+            for (int bin = 0; bin < histogram.length; bin++) {
+                histogram[bin] += counts[bin];
+            }
+        }
+        return this;
+    }
+
+    public Statistic merge(long sumHigh, long sumLow, long count, long min, long max) {
+        long low = this.sumLow + sumLow;
+        this.sumHigh += sumHigh + (Long.compareUnsigned(low, this.sumLow) < 0 ? 1 : 0);
+        this.sumLow = low;
+        this.count += count;
+        if (max > this.max) {
+            this.max = max;
         }
-        if (s2.getMax() < min) {
-            min = s2.getMin();
+        if (min < this.min) {
+            this.min = min;
         }
         return this;
     }
 
-    public double getSum() {
-        return sum;
+    /**
+     * @return the exact sum in minor units
+     */
+    public BigInteger getSum() {
+        if (sumHigh == sumLow >> 63) {
+            return BigInteger.valueOf(sumLow);
+        }
+        return BigInteger.valueOf(sumHigh).shiftLeft(64)
+                .add(BigInteger.valueOf(sumLow >>> 1).shiftLeft(1))
+                .add(BigInteger.valueOf(sumLow & 1));
+    }
+
+    public long getSumHigh() {
+        return sumHigh;
     }
 
-    public double getMax() {
+    public long getSumLow() {
+        return sumLow;
+    }
+
+    public long getMax() {
         return max;
     }
 
-    public double getMin() {
+    public long getMin() {
         return min;
     }
 
     public long getCount() {
         return count;
     }
-}
\ No newline at end of file
+
+    /**
+     * Merges distinct count registers into the registers of this statistic, if it has any.
+     *
+     * @param registers the array of the registers
+     * @param offset    the offset of the registers in the array
+     * @return this statistic
+     */
+    public Statistic mergeRegisters(byte[] registers, int offset) {
+        if (this.registers != null) {
+            HyperLogLog.merge(this.registers, registers, offset);
+        }
+        return this;
+    }
+
+    /**
+     * @return the histogram bin counts, or null if the statistic has no histogram
+     */
+    public long[] getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return the distinct count registers, or null if the statistic has no registers
+     */
+    public byte[] getRegisters() {
+        return registers;
+    }
+}
@@ -0,0 +1,113 @@
+package com.challenge.domain;
+
+/**
+ * Sliding time window of transactions divided into buckets of a fixed resolution. A transaction is part of the window
+ * if it is not in the future and not older than the window length, to the millisecond. The statistics of the window
+ * are the buckets from the one holding the oldest accepted millisecond to the one holding the current millisecond, so
+ * they can include at most one resolution of expired transactions.
+ */
+public class TimeWindow {
+
+    private final long lengthMillis;
+    private final long resolutionMillis;
+
+    /**
+     * @param lengthMillis     the window length in milliseconds, a positive multiple of the resolution
+     * @param resolutionMillis the bucket resolution in milliseconds, positive
+     */
+    public TimeWindow(long lengthMillis, long resolutionMillis) {
+        if (lengthMillis <= 0) {
+            throw new IllegalArgumentException("Window length must be positive: " + lengthMillis);
+        }
+        if (resolutionMillis <= 0) {
+            throw new IllegalArgumentException("Bucket resolution must be positive: " + resolutionMillis);
+        }
+        if (lengthMillis % resolutionMillis != 0) {
+            throw new IllegalArgumentException("Window length " + lengthMillis
+                    + " must be a multiple of the bucket resolution " + resolutionMillis);
+        }
+        this.lengthMillis = lengthMillis;
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    /**
+     * Parses a window length such as {@code 500ms}, {@code 10s}, {@code 5m} or {@code 1h}; a plain number is a number
+     * of seconds.
+     *
+     * @param text the window length
+     * @return the window length in milliseconds
+     * @throws IllegalArgumentException if the text is not a window length
+     */
+    public static long parseLength(String text) {
+        String trimmed = text.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isDigit(trimmed.charAt(end))) {
+            end++;
+        }
+        if (end == 0 || end > 9) {
+            throw new IllegalArgumentException("Invalid window length: " + text);
+        }
+        long value = Long.parseLong(trimmed.substring(0, end));
+        switch (trimmed.substring(end)) {
+            case "ms":
+                return value;
+            case "":
+            case "s":
+                return value * 1000;
+            case "m":
+                return value * 60_000;
+            case "h":
+                return value * 3_600_000;
+            default:
+                throw new IllegalArgumentException("Invalid window length: " + text);
+        }
+    }
+
+    public long getLengthMillis() {
+        return lengthMillis;
+    }
+
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    /**
+     * @return the number of buckets the window spans, including the partially covered buckets at both ends
+     */
+    public int getBucketCount() {
+        long count = lengthMillis / resolutionMillis + 1;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many buckets for window length " + lengthMillis
+                    + " and resolution " + resolutionMillis);
+        }
+        return (int) count;
+    }
+
+    /**
+     * @param millis epoch milliseconds
+     * @return the bucket holding the millisecond
+     */
+    public long bucketOf(long millis) {
+        return Math.floorDiv(millis, resolutionMillis);
+    }
+
+    /**
+     * @param nowMillis the current epoch milliseconds
+     * @return the oldest bucket of the window
+     */
+    public long firstBucket(long nowMillis) {
+        return bucketOf(nowMillis - lengthMillis);
+    }
+
+    /**
+     * Checks if a timestamp is in the window.
+     *
+     * @param nowMillis the current epoch milliseconds
+     * @param timestamp the epoch milliseconds to check
+     * @return true if the timestamp is in the window (including the window ends), false otherwise
+     */
+    public boolean contains(long nowMillis, long timestamp) {
+        long age = nowMillis - timestamp;
+        return age >= 0 && age <= lengthMillis;
+    }
+}
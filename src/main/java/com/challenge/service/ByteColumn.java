@@ -0,0 +1,89 @@
+package com.challenge.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed length column of {@code byte}s, on the heap or in a direct buffer, see {@link StoreMode}. Columns are not
+ * thread-safe; the stripes access them under their lock.
+ */
+abstract class ByteColumn {
+
+    abstract byte get(int index);
+
+    abstract void set(int index, byte value);
+
+    abstract void fill(int from, int to, byte value);
+
+    /**
+     * Merges a range of the column into an array with an element-wise max.
+     *
+     * @param target the array to merge into
+     * @param offset the index of the first element of the range, which has the length of the array
+     */
+    abstract void maxInto(byte[] target, int offset);
+
+    static final class Heap extends ByteColumn {
+
+        private final byte[] values;
+
+        Heap(int length) {
+            this.values = new byte[length];
+        }
+
+        @Override
+        byte get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, byte value) {
+            values[index] = value;
+        }
+
+        @Override
+        void fill(int from, int to, byte value) {
+            Arrays.fill(values, from, to, value);
+        }
+
+        @Override
+        void maxInto(byte[] target, int offset) {
+            for (int i = 0; i < target.length; i++) {
+                target[i] = (byte) Math.max(target[i], values[offset + i]);
+            }
+        }
+    }
+
+    static final class Direct extends ByteColumn {
+
+        private final ByteBuffer buffer;
+
+        Direct(int length) {
+            this.buffer = ByteBuffer.allocateDirect(length);
+        }
+
+        @Override
+        byte get(int index) {
+            return buffer.get(index);
+        }
+
+        @Override
+        void set(int index, byte value) {
+            buffer.put(index, value);
+        }
+
+        @Override
+        void fill(int from, int to, byte value) {
+            for (int index = from; index < to; index++) {
+                buffer.put(index, value);
+            }
+        }
+
+        @Override
+        void maxInto(byte[] target, int offset) {
+            for (int i = 0; i < target.length; i++) {
+                target[i] = (byte) Math.max(target[i], buffer.get(offset + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.challenge.service;
+
+import java.io.Closeable;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A UTC clock whose time is read by a single background thread every tick and cached in a volatile field, so that
+ * {@link #millis()} on the hot path is a volatile read instead of a system call.
+ * <p>
+ * The time is the wall clock time at startup advanced by {@link System#nanoTime()}, so it is monotonic: when the wall
+ * clock is stepped, e.g. by NTP, the cached time does not jump with it and the buckets of the statistics windows
+ * neither expire early nor move back into the window. It keeps running at the rate of the monotonic clock, which NTP
+ * still slews, but a step of the wall clock only shows after a restart. The cached time lags the system clock by up to a tick plus the scheduling delay of the thread, so a transaction stamped
+ * by a client with a clock in sync can look like it is from the future for that long. The thread is a daemon and stops
+ * on {@link #close()}.
+ */
+public class CachedClock extends Clock implements Closeable {
+
+    private final long tickNanos;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Thread ticker;
+
+    private volatile long millis = startMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param tickMillis the interval the time is read at in milliseconds, positive
+     */
+    public CachedClock(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Clock tick must be positive: " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.ticker = new Thread(this::tick, "cached-clock");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private void tick() {
+        while (!closed) {
+            LockSupport.parkNanos(tickNanos);
+            millis = startMillis + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    /**
+     * @return a view of this clock in another zone, which reads the same cached time and shares the ticking thread
+     */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return zone.equals(ZoneOffset.UTC) ? this : new Zoned(this, zone);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+
+    private static final class Zoned extends Clock {
+
+        private final CachedClock clock;
+        private final ZoneId zone;
+
+        private Zoned(CachedClock clock, ZoneId zone) {
+            this.clock = clock;
+            this.zone = zone;
+        }
+
+        @Override
+        public long millis() {
+            return clock.millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(clock.millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return clock.withZone(zone);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically pulls the partial statistics of the other nodes of the cluster from their
+ * {@code GET /statistics/partials} and merges them with the statistics of this node, so that every node can answer
+ * {@code GET /statistics/cluster} for the transactions of all nodes while each node only ingests its own share.
+ * Disabled unless {@code statistics.cluster.peers} is set.
+ * <p>
+ * A node that cannot be reached or sends invalid partials is left out of the merge until the next pull, so the
+ * cluster statistics are those of the reachable nodes.
+ */
+@Component
+public class ClusterStatistics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterStatistics.class);
+
+    private static final String PARTIALS = "/statistics/partials";
+
+    private final StatisticsService statisticsService;
+    private final List<String> peers;
+    private final int timeoutMillis;
+
+    /**
+     * @param statisticsService the statistics of this node
+     * @param peers             the base URLs of the other nodes, e.g. {@code http://10.0.0.2:8080}; empty to disable
+     * @param timeoutMillis     the connect and read timeout of a pull in milliseconds
+     */
+    @Autowired
+    public ClusterStatistics(StatisticsService statisticsService,
+                             @Value("${statistics.cluster.peers:}") String[] peers,
+                             @Value("${statistics.cluster.timeout:500}") int timeoutMillis) {
+        this.statisticsService = statisticsService;
+        this.peers = Collections.unmodifiableList(Arrays.stream(peers).map(String::trim)
+                .filter(peer -> !peer.isEmpty()).collect(Collectors.toList()));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Scheduled method that pulls the partials of every peer and merges them with the statistics of this node.
+     */
+    @Scheduled(fixedDelayString = "${statistics.cluster.interval:1000}")
+    public void pull() {
+        if (peers.isEmpty()) {
+            return;
+        }
+        List<StatisticsSnapshot> partials = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            try {
+                partials.add(statisticsService.readPartials(fetch(peer)));
+            } catch (IOException e) {
+                LOG.warn("Leaving out the statistics of {}: {}", peer, e.toString());
+            }
+        }
+        statisticsService.mergePartials(partials);
+    }
+
+    /**
+     * @return the base URLs of the other nodes
+     */
+    public List<String> getPeers() {
+        return peers;
+    }
+
+    private byte[] fetch(String peer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(peer + PARTIALS).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        try {
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected status " + connection.getResponseCode());
+            }
+            // partials longer than those of a node of this configuration are refused before they are buffered
+            long maxLength = statisticsService.getMaxPartialsLength();
+            long length = connection.getContentLengthLong();
+            if (length > maxLength) {
+                throw new IOException("Partials of " + length + " bytes exceed " + maxLength + " bytes");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length > 0 ? (int) length : 8192);
+            byte[] buffer = new byte[8192];
+            try (InputStream in = connection.getInputStream()) {
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    bytes.write(buffer, 0, read);
+                    if (bytes.size() > maxLength) {
+                        throw new IOException("Partials exceed " + maxLength + " bytes");
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.challenge.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed length column of {@code int}s, on the heap or in a direct buffer, see {@link StoreMode}. Columns are not
+ * thread-safe; the stripes access them under their lock.
+ */
+abstract class IntColumn {
+
+    abstract int get(int index);
+
+    abstract void set(int index, int value);
+
+    abstract void fill(int from, int to, int value);
+
+    static final class Heap extends IntColumn {
+
+        private final int[] values;
+
+        Heap(int length) {
+            this.values = new int[length];
+        }
+
+        @Override
+        int get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        @Override
+        void fill(int from, int to, int value) {
+            Arrays.fill(values, from, to, value);
+        }
+    }
+
+    static final class Direct extends IntColumn {
+
+        private final ByteBuffer buffer;
+
+        Direct(int length) {
+            this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(length, Integer.BYTES))
+                    .order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        int get(int index) {
+            return buffer.getInt(index << 2);
+        }
+
+        @Override
+        void set(int index, int value) {
+            buffer.putInt(index << 2, value);
+        }
+
+        @Override
+        void fill(int from, int to, int value) {
+            for (int index = from; index < to; index++) {
+                buffer.putInt(index << 2, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.challenge.service;
+
+import com.challenge.domain.Statistic;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One segment of the {@link KeyedStatisticsStore}: an open addressing map from primitive keys to slots, where every
+ * slot is a compact ring of time buckets stored in a flat {@code long[]}.
+ * <p>
+ * Slots are allocated on the first transaction of a key and the arrays grow by doubling up to the slot limit of the
+ * segment, so memory follows the number of live keys. The slots are kept in a doubly linked list in the order they were
+ * last written. Every write evicts a few keys from the tail of the list whose buckets all rolled out of the window, and
+ * a new key evicts the least recently written key when the segment is full.
+ * <p>
+ * A ring stores its newest bucket in the slot header and, per bucket, the 128 bit sum, count, min and max of the
+ * transactions in minor units. Buckets are reset when the ring moves forward onto them, so a ring holds no bucket ids.
+ */
+class KeyedStatisticsSegment {
+
+    private static final int HEAD = 0;
+    private static final int HEADER = 1;
+    private static final int SUM_HIGH = 0;
+    private static final int SUM_LOW = 1;
+    private static final int COUNT = 2;
+    private static final int MIN = 3;
+    private static final int MAX = 4;
+    private static final int FIELDS = 5;
+    private static final int INITIAL_SLOTS = 16;
+    private static final int IDLE_EVICTIONS_PER_WRITE = 2;
+    private static final int EMPTY = -1;
+
+    private final int buckets;
+    private final int stride;
+    private final int maxSlots;
+
+    private final StampedLock lock = new StampedLock();
+
+    private long[] data;
+    private long[] slotKeys;
+    private int[] previous;
+    private int[] next;
+    private int allocated;
+    private int freeSlot = EMPTY;
+    private int size;
+    private int mostRecent = EMPTY;
+    private int leastRecent = EMPTY;
+
+    private long[] tableKeys;
+    private int[] tableSlots;
+    private int tableMask;
+
+    /**
+     * @param buckets  the number of buckets of a key, one per time bucket that can be part of the statistics window
+     * @param maxSlots the maximum number of keys of the segment
+     */
+    KeyedStatisticsSegment(int buckets, int maxSlots) {
+        if (buckets <= 0) {
+            throw new IllegalArgumentException("Key bucket count must be positive: " + buckets);
+        }
+        if (maxSlots <= 0) {
+            throw new IllegalArgumentException("Key limit must be positive: " + maxSlots);
+        }
+        this.buckets = buckets;
+        this.stride = HEADER + buckets * FIELDS;
+        this.maxSlots = maxSlots;
+        resize(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    /**
+     * Adds an amount to a time bucket of a key.
+     *
+     * @param key       the key
+     * @param bucket    the time bucket of the transaction
+     * @param amount    the transaction amount in minor units
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return true if the amount was added; false if the bucket is outside of the window
+     */
+    boolean add(long key, long bucket, long amount, long nowBucket) {
+        if (bucket > nowBucket || bucket <= nowBucket - buckets) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < IDLE_EVICTIONS_PER_WRITE && leastRecent != EMPTY
+                    && data[leastRecent * stride + HEAD] <= nowBucket - buckets; i++) {
+                remove(leastRecent);
+            }
+
+            int slot = find(key);
+            if (slot == EMPTY) {
+                slot = allocate(key);
+            }
+            int base = slot * stride;
+            advance(base, nowBucket);
+            long head = data[base + HEAD];
+            if (bucket > head || bucket <= head - buckets) {
+                return false;
+            }
+            int offset = base + HEADER + indexOf(bucket) * FIELDS;
+            long low = data[offset + SUM_LOW] + amount;
+            data[offset + SUM_HIGH] += (amount >> 63) + (Long.compareUnsigned(low, data[offset + SUM_LOW]) < 0 ? 1 : 0);
+            data[offset + SUM_LOW] = low;
+            data[offset + COUNT]++;
+            data[offset + MIN] = Math.min(data[offset + MIN], amount);
+            data[offset + MAX] = Math.max(data[offset + MAX], amount);
+            touch(slot);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Merges the aggregate of the window of a key ending at a time bucket into a {@code Statistic}.
+     *
+     * @param key       the key
+     * @param target    the statistic to merge into
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     */
+    void mergeInto(long key, Statistic target, long nowBucket) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(key);
+            if (slot == EMPTY) {
+                return;
+            }
+            int base = slot * stride;
+            long head = data[base + HEAD];
+            long newest = Math.min(head, nowBucket);
+            for (long bucket = Math.max(head, nowBucket) - buckets + 1; bucket <= newest; bucket++) {
+                int offset = base + HEADER + indexOf(bucket) * FIELDS;
+                if (data[offset + COUNT] > 0) {
+                    target.merge(data[offset + SUM_HIGH], data[offset + SUM_LOW], data[offset + COUNT],
+                            data[offset + MIN], data[offset + MAX]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return the number of keys held by the segment
+     */
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void advance(int base, long nowBucket) {
+        long head = data[base + HEAD];
+        if (nowBucket <= head) {
+            return;
+        }
+        if (head == Long.MIN_VALUE || nowBucket - head >= buckets) {
+            for (int index = 0; index < buckets; index++) {
+                clear(base + HEADER + index * FIELDS);
+            }
+        } else {
+            for (long bucket = head + 1; bucket <= nowBucket; bucket++) {
+                clear(base + HEADER + indexOf(bucket) * FIELDS);
+            }
+        }
+        data[base + HEAD] = nowBucket;
+    }
+
+    private void clear(int offset) {
+        data[offset + SUM_HIGH] = 0;
+        data[offset + SUM_LOW] = 0;
+        data[offset + COUNT] = 0;
+        data[offset + MIN] = Long.MAX_VALUE;
+        data[offset + MAX] = Long.MIN_VALUE;
+    }
+
+    private int allocate(long key) {
+        if (size == maxSlots) {
+            remove(leastRecent);
+        }
+        int slot;
+        if (freeSlot != EMPTY) {
+            slot = freeSlot;
+            freeSlot = next[slot];
+        } else {
+            if (allocated == slotKeys.length) {
+                resize(Math.min(slotKeys.length * 2, maxSlots));
+            }
+            slot = allocated++;
+        }
+        slotKeys[slot] = key;
+        data[slot * stride + HEAD] = Long.MIN_VALUE;
+        previous[slot] = EMPTY;
+        next[slot] = mostRecent;
+        if (mostRecent != EMPTY) {
+            previous[mostRecent] = slot;
+        } else {
+            leastRecent = slot;
+        }
+        mostRecent = slot;
+        insert(key, slot);
+        size++;
+        return slot;
+    }
+
+    private void remove(int slot) {
+        delete(slotKeys[slot]);
+        unlink(slot);
+        next[slot] = freeSlot;
+        freeSlot = slot;
+        size--;
+    }
+
+    private void touch(int slot) {
+        if (slot == mostRecent) {
+            return;
+        }
+        unlink(slot);
+        previous[slot] = EMPTY;
+        next[slot] = mostRecent;
+        previous[mostRecent] = slot;
+        mostRecent = slot;
+    }
+
+    private void unlink(int slot) {
+        if (previous[slot] != EMPTY) {
+            next[previous[slot]] = next[slot];
+        } else {
+            mostRecent = next[slot];
+        }
+        if (next[slot] != EMPTY) {
+            previous[next[slot]] = previous[slot];
+        } else {
+            leastRecent = previous[slot];
+        }
+    }
+
+    private void resize(int slots) {
+        data = data == null ? new long[slots * stride] : Arrays.copyOf(data, slots * stride);
+        slotKeys = slotKeys == null ? new long[slots] : Arrays.copyOf(slotKeys, slots);
+        previous = previous == null ? new int[slots] : Arrays.copyOf(previous, slots);
+        next = next == null ? new int[slots] : Arrays.copyOf(next, slots);
+
+        int capacity = Integer.highestOneBit(slots * 2 - 1) << 1;
+        tableKeys = new long[capacity];
+        tableSlots = new int[capacity];
+        tableMask = capacity - 1;
+        Arrays.fill(tableSlots, EMPTY);
+        for (int slot = mostRecent; slot != EMPTY; slot = next[slot]) {
+            insert(slotKeys[slot], slot);
+        }
+    }
+
+    private int find(long key) {
+        for (int position = (int) hash(key) & tableMask; ; position = (position + 1) & tableMask) {
+            int slot = tableSlots[position];
+            if (slot == EMPTY || tableKeys[position] == key) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(long key, int slot) {
+        int position = (int) hash(key) & tableMask;
+        while (tableSlots[position] != EMPTY) {
+            position = (position + 1) & tableMask;
+        }
+        tableKeys[position] = key;
+        tableSlots[position] = slot;
+    }
+
+    /**
+     * Removes a key from the table, shifting back the keys of the probe sequence so that lookups need no tombstones.
+     */
+    private void delete(long key) {
+        int position = (int) hash(key) & tableMask;
+        while (tableKeys[position] != key || tableSlots[position] == EMPTY) {
+            position = (position + 1) & tableMask;
+        }
+        for (int candidate = (position + 1) & tableMask; tableSlots[candidate] != EMPTY;
+             candidate = (candidate + 1) & tableMask) {
+            int home = (int) hash(tableKeys[candidate]) & tableMask;
+            boolean reachable = position <= candidate
+                    ? position < home && home <= candidate
+                    : position < home || home <= candidate;
+            if (!reachable) {
+                tableKeys[position] = tableKeys[candidate];
+                tableSlots[position] = tableSlots[candidate];
+                position = candidate;
+            }
+        }
+        tableSlots[position] = EMPTY;
+    }
+
+    private int indexOf(long bucket) {
+        return (int) Math.floorMod(bucket, (long) buckets);
+    }
+
+    /**
+     * Mixes the bits of a key, so that sequential ids spread over the segments and the table.
+     */
+    static long hash(long key) {
+        long hash = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,77 @@
+package com.challenge.service;
+
+import com.challenge.domain.Statistic;
+
+/**
+ * Time bucket store of the statistics per key, e.g. per merchant or account, with a hard limit on the number of keys.
+ * <p>
+ * Keys are spread over independently locked {@link KeyedStatisticsSegment}s by hash, so a hot key only contends with
+ * the keys of its own segment. Each segment holds at most its share of the key limit; when a segment is full the key
+ * written least recently is evicted, and keys whose transactions all expired are evicted as the segment is written.
+ */
+public class KeyedStatisticsStore {
+
+    private final KeyedStatisticsSegment[] segments;
+    private final int segmentMask;
+
+    /**
+     * @param buckets  the number of buckets per key, one per time bucket that can be part of the statistics window
+     * @param maxKeys  the maximum number of keys held at the same time
+     * @param segments the number of segments, rounded down to a power of two not greater than the key limit
+     */
+    public KeyedStatisticsStore(int buckets, int maxKeys, int segments) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Key limit must be positive: " + maxKeys);
+        }
+        if (segments <= 0) {
+            throw new IllegalArgumentException("Segment count must be positive: " + segments);
+        }
+        int count = Integer.highestOneBit(Math.min(segments, maxKeys));
+        this.segments = new KeyedStatisticsSegment[count];
+        for (int i = 0; i < count; i++) {
+            this.segments[i] = new KeyedStatisticsSegment(buckets, maxKeys / count);
+        }
+        this.segmentMask = count - 1;
+    }
+
+    /**
+     * Adds an amount to a time bucket of a key.
+     *
+     * @param key       the key
+     * @param bucket    the time bucket of the transaction
+     * @param amount    the transaction amount in minor units
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return true if the amount was added; false if the bucket is outside of the window
+     */
+    public boolean add(long key, long bucket, long amount, long nowBucket) {
+        return segmentOf(key).add(key, bucket, amount, nowBucket);
+    }
+
+    /**
+     * Gets the aggregate of the window of a key ending at a time bucket.
+     *
+     * @param key       the key
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the aggregate of the window, empty if the key is unknown or was evicted; not null
+     */
+    public Statistic snapshot(long key, long nowBucket) {
+        Statistic result = new Statistic();
+        segmentOf(key).mergeInto(key, result, nowBucket);
+        return result;
+    }
+
+    /**
+     * @return the number of keys held by the store
+     */
+    public int size() {
+        int size = 0;
+        for (KeyedStatisticsSegment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private KeyedStatisticsSegment segmentOf(long key) {
+        return segments[(int) (KeyedStatisticsSegment.hash(key) >>> 40) & segmentMask];
+    }
+}
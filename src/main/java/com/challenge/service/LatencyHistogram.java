@@ -0,0 +1,90 @@
+package com.challenge.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations with power of two bucket bounds from {@value #MIN_NANOS} nanoseconds to about
+ * 9 minutes, for the latencies of the metrics. The lowest bound resolves the sub-microsecond latencies of adding a
+ * transaction or reading the cached statistics, which a floor of a microsecond would count in a single bucket.
+ * <p>
+ * Bucket {@code 0} counts the durations up to {@value #MIN_NANOS} nanoseconds and bucket {@code i} the durations up to
+ * {@code MIN_NANOS << i} that are not in bucket {@code i - 1}; the last bucket also counts all longer durations. The
+ * bounds are inclusive like the {@code le} bounds of a Prometheus histogram.
+ * Recording a duration is a leading zero count and two {@link LongAdder} increments, which do not allocate once the
+ * adders have expanded to the number of contending threads.
+ */
+public class LatencyHistogram {
+
+    static final long MIN_NANOS = 64;
+    static final int BUCKETS = 35;
+
+    private static final int MIN_SHIFT = Long.numberOfTrailingZeros(MIN_NANOS);
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts[bucket] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos a duration in nanoseconds; negative durations, e.g. after a clock adjustment, count as 0
+     */
+    public void record(long nanos) {
+        long duration = Math.max(0, nanos);
+        counts[bucketOf(duration)].increment();
+        sumNanos.add(duration);
+    }
+
+    /**
+     * @param nanos a duration in nanoseconds
+     * @return the bucket of the duration
+     */
+    static int bucketOf(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos - 1) >>> MIN_SHIFT));
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the inclusive upper bound of the durations of the bucket in nanoseconds; {@link Long#MAX_VALUE} for the
+     * last bucket
+     */
+    public long getUpperBoundNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : MIN_NANOS << bucket;
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the number of durations recorded in the bucket
+     */
+    public long getCount(int bucket) {
+        return counts[bucket].sum();
+    }
+
+    /**
+     * @return the number of recorded durations; not consistent with the bucket counts while durations are recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucketCount : counts) {
+            count += bucketCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the recorded durations in nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
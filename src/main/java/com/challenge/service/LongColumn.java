@@ -0,0 +1,73 @@
+package com.challenge.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed length column of {@code long}s, on the heap or in a direct buffer, see {@link StoreMode}. Columns are not
+ * thread-safe; the stripes access them under their lock.
+ */
+abstract class LongColumn {
+
+    abstract long get(int index);
+
+    abstract void set(int index, long value);
+
+    abstract void fill(int from, int to, long value);
+
+    static final class Heap extends LongColumn {
+
+        private final long[] values;
+
+        Heap(int length) {
+            this.values = new long[length];
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        void fill(int from, int to, long value) {
+            Arrays.fill(values, from, to, value);
+        }
+    }
+
+    /**
+     * Stores the values in native byte order with absolute buffer accessors, which the JIT compiles to plain memory
+     * accesses.
+     */
+    static final class Direct extends LongColumn {
+
+        private final ByteBuffer buffer;
+
+        Direct(int length) {
+            this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(length, Long.BYTES))
+                    .order(ByteOrder.nativeOrder());
+        }
+
+        @Override
+        long get(int index) {
+            return buffer.getLong(index << 3);
+        }
+
+        @Override
+        void set(int index, long value) {
+            buffer.putLong(index << 3, value);
+        }
+
+        @Override
+        void fill(int from, int to, long value) {
+            for (int index = from; index < to; index++) {
+                buffer.putLong(index << 3, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.challenge.service;
+
+import com.challenge.domain.HyperLogLog;
+import com.challenge.domain.LogHistogram;
+import com.challenge.domain.Statistic;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time bucket store striped by thread, in the spirit of {@link java.util.concurrent.atomic.LongAdder} cells.
+ * <p>
+ * Every {@link StatisticsStripe} holds its own buckets and rolling window aggregate behind its own lock. A writer
+ * starts at the stripe derived from its thread and moves on to the next stripe instead of waiting when that one is
+ * being written, so a burst of transactions for the same bucket spreads over the stripes rather than serializing on
+ * one bucket. The stripes are only combined when the statistics are read.
+ * <p>
+ * The store can serve several windows ending at the current bucket from the same buckets. Transactions are accepted
+ * for the longest window and each shorter window is a band of the rolling aggregate, see {@link StatisticsStripe}.
+ * <p>
+ * Expiry needs no background task: every write and read first rolls the stripes it touches forward to the current
+ * bucket, overwriting the buckets that left the window, so the cost of expiry is bounded by the number of buckets that
+ * expired and is paid by the first access after they did.
+ */
+public class StatisticsBucketStore {
+
+    private final StatisticsStripe[] stripes;
+    private final int stripeMask;
+    private final int windowCount;
+    private final LogHistogram histogram;
+    private final HyperLogLog distinct;
+
+    /**
+     * @param size    the number of buckets per stripe, one per time bucket that can be part of the statistics window
+     * @param stripes the number of stripes, rounded up to a power of two; 0 to use one per available processor
+     */
+    public StatisticsBucketStore(int size, int stripes) {
+        this(new int[]{size}, stripes);
+    }
+
+    /**
+     * @param windowSizes the number of buckets of every window, strictly ascending; the longest window sets the number
+     *                    of buckets per stripe
+     * @param stripes     the number of stripes, rounded up to a power of two; 0 to use one per available processor
+     */
+    public StatisticsBucketStore(int[] windowSizes, int stripes) {
+        this(windowSizes, stripes, null, null, StoreMode.HEAP);
+    }
+
+    /**
+     * @param windowSizes the number of buckets of every window, strictly ascending; the longest window sets the number
+     *                    of buckets per stripe
+     * @param stripes     the number of stripes, rounded up to a power of two; 0 to use one per available processor
+     * @param histogram   the binning of the percentile histograms, or null to keep no histograms
+     * @param distinct    the distinct payer count registers, or null to keep no registers
+     */
+    public StatisticsBucketStore(int[] windowSizes, int stripes, LogHistogram histogram, HyperLogLog distinct) {
+        this(windowSizes, stripes, histogram, distinct, StoreMode.HEAP);
+    }
+
+    /**
+     * @param windowSizes the number of buckets of every window, strictly ascending; the longest window sets the number
+     *                    of buckets per stripe
+     * @param stripes     the number of stripes, rounded up to a power of two; 0 to use one per available processor
+     * @param histogram   the binning of the percentile histograms, or null to keep no histograms
+     * @param distinct    the distinct payer count registers, or null to keep no registers
+     * @param mode        where the stripes keep their buckets
+     */
+    public StatisticsBucketStore(int[] windowSizes, int stripes, LogHistogram histogram, HyperLogLog distinct,
+                                 StoreMode mode) {
+        if (stripes < 0) {
+            throw new IllegalArgumentException("Stripe count must not be negative: " + stripes);
+        }
+        int requested = stripes == 0 ? Runtime.getRuntime().availableProcessors() : stripes;
+        int count = Integer.highestOneBit(requested) == requested ? requested : Integer.highestOneBit(requested) << 1;
+        this.stripes = new StatisticsStripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new StatisticsStripe(windowSizes, histogram, distinct, mode);
+        }
+        this.stripeMask = count - 1;
+        this.windowCount = windowSizes.length;
+        this.histogram = histogram;
+        this.distinct = distinct;
+    }
+
+    /**
+     * Adds an amount to a time bucket.
+     *
+     * @param bucket      the time bucket of the transaction
+     * @param amount      the transaction amount in minor units
+     * @param nowBucket   the current time bucket, which is the newest bucket of the window
+     * @return true if the amount was added; false if the bucket is outside of the window
+     */
+    public boolean add(long bucket, long amount, long nowBucket) {
+        return add(bucket, amount, -1, nowBucket);
+    }
+
+    /**
+     * Adds an amount with the payer of the transaction to a time bucket.
+     *
+     * @param bucket    the time bucket of the transaction
+     * @param amount    the transaction amount in minor units
+     * @param payerId   the id of the payer, counted in the distinct payers if the store keeps registers
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return true if the amount was added; false if the bucket is outside of the window
+     */
+    public boolean addWithPayer(long bucket, long amount, long payerId, long nowBucket) {
+        return add(bucket, amount, distinct == null ? -1 : distinct.cellOf(payerId), nowBucket);
+    }
+
+    private boolean add(long bucket, long amount, int cell, long nowBucket) {
+        int bin = histogram == null ? 0 : histogram.binOf(amount);
+        int home = homeStripe();
+        for (int probe = 0; probe <= stripeMask; probe++) {
+            int result = stripes[(home + probe) & stripeMask].tryAdd(bucket, amount, bin, cell, nowBucket);
+            if (result != StatisticsStripe.CONTENDED) {
+                return result == StatisticsStripe.ADDED;
+            }
+        }
+        return stripes[home].add(bucket, amount, bin, cell, nowBucket);
+    }
+
+    /**
+     * Merges the buckets of every stripe that are part of a snapshot into it, one stripe at a time, so that writers are
+     * never blocked by the copy.
+     *
+     * @param target the snapshot
+     */
+    void copyInto(StatisticsSnapshot target) {
+        for (StatisticsStripe stripe : stripes) {
+            stripe.copyInto(target);
+        }
+    }
+
+    /**
+     * Merges the buckets of a snapshot that are still in the window into the store.
+     *
+     * @param source    the snapshot, with the histogram bins and registers of this store
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions restored
+     */
+    long restore(StatisticsSnapshot source, long nowBucket) {
+        return stripes[homeStripe()].restore(source, nowBucket);
+    }
+
+    /**
+     * Replaces the buckets of the store with the merged buckets of snapshots, so that a store can be reused as the merge
+     * target of snapshots that are taken again and again.
+     *
+     * @param sources   the snapshots, with the bins and registers of this store
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions merged
+     */
+    long replace(List<StatisticsSnapshot> sources, long nowBucket) {
+        long replaced = stripes[0].replace(sources, nowBucket);
+        for (int stripe = 1; stripe < stripes.length; stripe++) {
+            stripes[stripe].replace(Collections.emptyList(), nowBucket);
+        }
+        return replaced;
+    }
+
+    /**
+     * Merges every group of a batch into its bucket, taking a single stripe lock for the whole batch.
+     *
+     * @param batch     the batch
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions added; transactions of buckets outside of the window are not added
+     */
+    public long addAll(TransactionBatch batch, long nowBucket) {
+        int home = homeStripe();
+        for (int probe = 0; probe <= stripeMask; probe++) {
+            long added = stripes[(home + probe) & stripeMask].tryAddAll(batch, nowBucket);
+            if (added >= 0) {
+                return added;
+            }
+        }
+        return stripes[home].addAll(batch, nowBucket);
+    }
+
+    /**
+     * Gets the aggregate of the longest window ending at a time bucket.
+     *
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the aggregate of the window, not null
+     */
+    public Statistic snapshot(long nowBucket) {
+        return snapshot(nowBucket, windowCount - 1);
+    }
+
+    /**
+     * Gets the aggregate of a window ending at a time bucket.
+     *
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @param window    the index of the window in the window sizes of the store
+     * @return the aggregate of the window, with the histogram and the distinct count registers of the window if the
+     * store keeps them; not null
+     */
+    public Statistic snapshot(long nowBucket, int window) {
+        if (window < 0 || window >= windowCount) {
+            throw new IndexOutOfBoundsException("No window " + window + " in " + windowCount + " windows");
+        }
+        int bins = histogram == null ? 0 : histogram.getBinCount();
+        int registerCount = distinct == null ? 0 : distinct.getRegisterCount();
+        Statistic result = new Statistic(bins, registerCount);
+        long[] scratch = bins == 0 ? null : new long[bins];
+        byte[] registers = registerCount == 0 ? null : new byte[registerCount];
+        for (StatisticsStripe stripe : stripes) {
+            stripe.mergeInto(result, nowBucket, window, scratch, registers);
+        }
+        return result;
+    }
+
+    /**
+     * @return a number that changes with every write to the store; together with the current bucket it identifies
+     * the state of the statistics
+     */
+    public long version() {
+        long version = 0;
+        for (StatisticsStripe stripe : stripes) {
+            version += stripe.version();
+        }
+        return version;
+    }
+
+    /**
+     * Rolls the window forward to a time bucket, removing the buckets that fall out of it from the aggregate. Writes
+     * and reads do this themselves, so it is never required for correct statistics.
+     *
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     */
+    public void expire(long nowBucket) {
+        for (StatisticsStripe stripe : stripes) {
+            stripe.expire(nowBucket);
+        }
+    }
+
+    /**
+     * Records the time every stripe spends removing the buckets that rolled out of the windows when it moves to a new
+     * bucket.
+     *
+     * @param latency the histogram to record into
+     */
+    void recordExpiryLatency(LatencyHistogram latency) {
+        for (StatisticsStripe stripe : stripes) {
+            stripe.recordExpiryLatency(latency);
+        }
+    }
+
+    /**
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of buckets of the longest window that hold transactions, summed over the stripes
+     */
+    public int liveBuckets(long nowBucket) {
+        int live = 0;
+        for (StatisticsStripe stripe : stripes) {
+            live += stripe.liveBuckets(nowBucket);
+        }
+        return live;
+    }
+
+    private int homeStripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+}
@@ -0,0 +1,96 @@
+package com.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Periodically writes the statistics to a snapshot file and restores them from it on startup, so that a restart does
+ * not report empty statistics for a whole interval. Disabled unless {@code statistics.snapshot.path} is set.
+ * <p>
+ * If the {@link TransactionLog} is enabled the statistics are restored by replaying the log instead, which holds every
+ * accepted transaction of the longest interval, and no snapshots are written.
+ */
+@Component
+public class StatisticsCheckpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StatisticsCheckpoint.class);
+
+    private final StatisticsService statisticsService;
+
+    /**
+     * The snapshot file, or null if snapshots are disabled.
+     */
+    private final Path path;
+
+    /**
+     * @param statisticsService the statistics to write and restore
+     * @param path              the snapshot file; empty to disable snapshots
+     */
+    @Autowired
+    public StatisticsCheckpoint(StatisticsService statisticsService,
+                                @Value("${statistics.snapshot.path:}") String path) {
+        this.statisticsService = statisticsService;
+        this.path = path.trim().isEmpty() ? null : Paths.get(path.trim());
+    }
+
+    /**
+     * Restores the statistics from the transaction log or the snapshot file, if there is one. An unreadable snapshot
+     * is logged and ignored, so the service starts with empty statistics rather than not at all.
+     */
+    @PostConstruct
+    public void restore() {
+        if (statisticsService.hasTransactionLog()) {
+            try {
+                long replayed = statisticsService.replayTransactionLog();
+                LOG.info("Replayed {} transactions from the transaction log", replayed);
+            } catch (IOException e) {
+                LOG.warn("Could not replay the transaction log", e);
+            }
+            return;
+        }
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try {
+            long restored = statisticsService.restoreSnapshot(path);
+            LOG.info("Restored {} transactions from statistics snapshot {}", restored, path);
+        } catch (IOException e) {
+            LOG.warn("Ignoring statistics snapshot {}", path, e);
+        }
+    }
+
+    /**
+     * Scheduled method that writes the statistics to the snapshot file.
+     */
+    @Scheduled(fixedDelayString = "${statistics.snapshot.interval:5000}",
+            initialDelayString = "${statistics.snapshot.interval:5000}")
+    public void checkpoint() {
+        if (path == null || statisticsService.hasTransactionLog()) {
+            return;
+        }
+        try {
+            statisticsService.writeSnapshot(path);
+        } catch (IOException e) {
+            LOG.warn("Could not write statistics snapshot {}", path, e);
+        }
+    }
+
+    /**
+     * Writes a last snapshot on shutdown.
+     */
+    @PreDestroy
+    public void close() {
+        checkpoint();
+    }
+}
@@ -0,0 +1,106 @@
+package com.challenge.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of the ingestion and query paths of the {@link StatisticsService}, recorded without locks or
+ * allocation so that they can stay on the hot path.
+ */
+public class StatisticsMetrics {
+
+    /**
+     * What happened to a transaction.
+     */
+    public enum Outcome {
+        /**
+         * Added to the statistics.
+         */
+        ACCEPTED,
+        /**
+         * Older than the longest interval; batches also count transactions from the future here.
+         */
+        EXPIRED,
+        /**
+         * Timestamp in the future.
+         */
+        FUTURE,
+        /**
+         * Rejected by the validation or not representable in the amount scale.
+         */
+        INVALID,
+        /**
+         * Not added as the write-ahead log failed.
+         */
+        FAILED,
+        /**
+         * Not added as the transaction queue was full.
+         */
+        DROPPED
+    }
+
+    private final LongAdder[] transactions = new LongAdder[Outcome.values().length];
+    private final LatencyHistogram addTransactionLatency = new LatencyHistogram();
+    private final LatencyHistogram addTransactionsLatency = new LatencyHistogram();
+    private final LatencyHistogram getStatisticsLatency = new LatencyHistogram();
+    private final LatencyHistogram expiryLatency = new LatencyHistogram();
+
+    public StatisticsMetrics() {
+        for (int outcome = 0; outcome < transactions.length; outcome++) {
+            transactions[outcome] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param outcome what happened to a transaction
+     */
+    public void count(Outcome outcome) {
+        transactions[outcome.ordinal()].increment();
+    }
+
+    /**
+     * @param outcome what happened to the transactions
+     * @param count   the number of transactions
+     */
+    public void count(Outcome outcome, long count) {
+        if (count != 0) {
+            transactions[outcome.ordinal()].add(count);
+        }
+    }
+
+    /**
+     * @param outcome what happened to the transactions
+     * @return the number of transactions since startup
+     */
+    public long getCount(Outcome outcome) {
+        return transactions[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return the latency of adding a single transaction, including the wait for the write-ahead log
+     */
+    public LatencyHistogram getAddTransactionLatency() {
+        return addTransactionLatency;
+    }
+
+    /**
+     * @return the latency of adding a batch of transactions, including the wait for the write-ahead log
+     */
+    public LatencyHistogram getAddTransactionsLatency() {
+        return addTransactionsLatency;
+    }
+
+    /**
+     * @return the latency of reading the statistics of the default interval
+     */
+    public LatencyHistogram getGetStatisticsLatency() {
+        return getStatisticsLatency;
+    }
+
+    /**
+     * @return the time a stripe spent removing the buckets that rolled out of the intervals, recorded whenever a write
+     * or read moves a stripe to a new bucket
+     */
+    public LatencyHistogram getExpiryLatency() {
+        return expiryLatency;
+    }
+}
@@ -1,111 +1,652 @@
 package com.challenge.service;
 
+import com.challenge.domain.AmountScale;
+import com.challenge.domain.HyperLogLog;
+import com.challenge.domain.LogHistogram;
 import com.challenge.domain.Statistic;
+import com.challenge.domain.TimeWindow;
+import com.challenge.service.StatisticsMetrics.Outcome;
 import com.challenge.transfer.StatisticsOutput;
+import com.challenge.transfer.TransactionBatchOutput;
 import com.challenge.transfer.TransactionInput;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.TreeMap;
 
 @Service
 public class StatisticsService {
 
-    @Value("${transaction.acceptance.time:60}")
-    private int transactionTtl;
+    private static final int KEY_SEGMENTS = 64;
+    private static final int REPLAY_BATCH_SIZE = 4096;
 
-    private final Map<Long, Statistic> statisticsBucketMap = new ConcurrentHashMap<>(transactionTtl);
+    /**
+     * The responses of {@link #addTransaction(TransactionInput)}, which are immutable and have no body, so that adding
+     * a transaction does not allocate them and their headers every time.
+     */
+    private static final ResponseEntity CREATED = new ResponseEntity(HttpStatus.CREATED);
+    private static final ResponseEntity NO_CONTENT = new ResponseEntity(HttpStatus.NO_CONTENT);
+    private static final ResponseEntity BAD_REQUEST = new ResponseEntity(HttpStatus.BAD_REQUEST);
+    private static final ResponseEntity SERVICE_UNAVAILABLE = new ResponseEntity(HttpStatus.SERVICE_UNAVAILABLE);
+
+    /**
+     * The longest statistics window, which transactions are accepted for.
+     */
+    private final TimeWindow window;
+
+    /**
+     * The index in the bucket store of every statistics window by window length in milliseconds.
+     */
+    private final TreeMap<Long, Integer> windowIndexes = new TreeMap<>();
+    private final int defaultWindowIndex;
+
+    /**
+     * The number of buckets of every interval, to merge the partial statistics of other nodes into a store of the same
+     * shape.
+     */
+    private final int[] windowSizes;
+    private final AmountScale amountScale;
+
+    /**
+     * The binning of the percentile histograms, or null if no percentiles are configured.
+     */
+    private final LogHistogram histogram;
+    private final double[] quantiles;
+    private final String[] quantileNames;
+
+    /**
+     * The distinct payer count registers, or null if distinct payers are not counted.
+     */
+    private final HyperLogLog distinct;
+
+    /**
+     * One bucket per resolution step of the longest interval, including both interval ends, plus the rolling
+     * aggregates of the intervals, striped by writing thread.
+     */
+    private final StatisticsBucketStore bucketStore;
+
+    /**
+     * The header snapshot files and the partials of other nodes must have to be merged with the buckets.
+     */
+    private final StatisticsSnapshot.Layout snapshotLayout;
+
+    /**
+     * The default interval at the coarser resolution of the statistics per key.
+     */
+    private final TimeWindow keyWindow;
+
+    /**
+     * One bucket per key resolution step of the default interval for every recently written key.
+     */
+    private final KeyedStatisticsStore keyedStore;
+
+    /**
+     * The write-ahead log of the accepted transactions, or null if it is disabled.
+     */
+    private TransactionLog transactionLog;
+
+    /**
+     * The queue single transactions are handed to a writer thread through, or null if they are added by the request
+     * threads.
+     */
+    private TransactionQueue transactionQueue;
+
+    /**
+     * The time transactions are accepted and statistics are read at.
+     */
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * The statistics of the default interval as of a store version and bucket, replaced when either changes.
+     */
+    private volatile CachedStatistics cachedStatistics;
+
+    /**
+     * The statistics of this node merged with the partial statistics of the other nodes of the cluster, or null until
+     * partials were merged for the first time.
+     */
+    private volatile StatisticsBucketStore clusterStore;
+
+    /**
+     * The counters and latencies of adding transactions and reading the statistics.
+     */
+    private final StatisticsMetrics metrics = new StatisticsMetrics();
 
     /**
-     * Adds a {@code TransactionInput} to the {@link StatisticsService#statisticsBucketMap} if the
-     * transactionTime is in the past, but not older then a predefined interval.
+     * @param transactionTtl      the default interval in seconds
+     * @param resolutionMillis    the bucket resolution in milliseconds; the intervals must be multiples of it
+     * @param windows             additional intervals that statistics can be queried for, e.g. {@code 10s} or
+     *                            {@code 5m}
+     * @param amountScale         the number of decimal places amounts are aggregated with
+     * @param stripes             the number of bucket store stripes; 0 for one per available processor
+     * @param storeMode           where the bucket store keeps its buckets, {@code heap} or {@code direct}
+     * @param keyResolutionMillis the bucket resolution of the statistics per key in milliseconds; the default interval
+     *                            must be a multiple of it
+     * @param maxKeys             the maximum number of keys statistics are kept for
+     * @param quantiles           the quantiles returned with the statistics, e.g. {@code 0.99}; none to keep no
+     *                            histograms
+     * @param quantileAccuracy    the relative error of the quantiles
+     * @param distinctPrecision   the number of hash bits selecting a distinct payer count register, 4 to 16; 0 to not
+     *                            count distinct payers
+     */
+    @Autowired
+    public StatisticsService(@Value("${transaction.acceptance.time:60}") int transactionTtl,
+                             @Value("${statistics.bucket.resolution:1000}") long resolutionMillis,
+                             @Value("${statistics.windows:}") String[] windows,
+                             @Value("${transaction.amount.scale:2}") int amountScale,
+                             @Value("${statistics.store.stripes:0}") int stripes,
+                             @Value("${statistics.store.mode:heap}") String storeMode,
+                             @Value("${statistics.keys.resolution:5000}") long keyResolutionMillis,
+                             @Value("${statistics.keys.max:100000}") int maxKeys,
+                             @Value("${statistics.percentiles.quantiles:}") String[] quantiles,
+                             @Value("${statistics.percentiles.accuracy:0.01}") double quantileAccuracy,
+                             @Value("${statistics.distinct.precision:0}") int distinctPrecision) {
+        windowIndexes.put(transactionTtl * 1000L, 0);
+        for (String window : windows) {
+            if (!window.trim().isEmpty()) {
+                windowIndexes.put(TimeWindow.parseLength(window), 0);
+            }
+        }
+        this.windowSizes = new int[windowIndexes.size()];
+        TimeWindow longest = null;
+        int index = 0;
+        for (Map.Entry<Long, Integer> entry : windowIndexes.entrySet()) {
+            longest = new TimeWindow(entry.getKey(), resolutionMillis);
+            windowSizes[index] = longest.getBucketCount();
+            entry.setValue(index++);
+        }
+        this.window = longest;
+        this.defaultWindowIndex = windowIndexes.get(transactionTtl * 1000L);
+        this.amountScale = new AmountScale(amountScale);
+        this.quantiles = Arrays.stream(quantiles).map(String::trim).filter(quantile -> !quantile.isEmpty())
+                .mapToDouble(Double::parseDouble).toArray();
+        this.quantileNames = new String[this.quantiles.length];
+        for (int i = 0; i < this.quantiles.length; i++) {
+            if (!(this.quantiles[i] >= 0 && this.quantiles[i] <= 1)) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + this.quantiles[i]);
+            }
+            quantileNames[i] = "p" + BigDecimal.valueOf(this.quantiles[i]).movePointRight(2).stripTrailingZeros()
+                    .toPlainString();
+        }
+        this.histogram = this.quantiles.length == 0 ? null : new LogHistogram(quantileAccuracy);
+        this.distinct = distinctPrecision == 0 ? null : new HyperLogLog(distinctPrecision);
+        this.bucketStore = new StatisticsBucketStore(windowSizes, stripes, histogram, distinct,
+                StoreMode.of(storeMode));
+        this.bucketStore.recordExpiryLatency(metrics.getExpiryLatency());
+        this.snapshotLayout = new StatisticsSnapshot.Layout(window.getResolutionMillis(), window.getBucketCount(),
+                histogram == null ? 0 : histogram.getBinCount(), distinct == null ? 0 : distinct.getRegisterCount());
+        this.keyWindow = new TimeWindow(transactionTtl * 1000L, keyResolutionMillis);
+        this.keyedStore = new KeyedStatisticsStore(keyWindow.getBucketCount(), maxKeys, KEY_SEGMENTS);
+    }
+
+    /**
+     * Appends the accepted transactions to a write-ahead log, which keeps its segments for the longest interval.
+     *
+     * @param transactionLog the log; ignored if it is disabled
+     */
+    @Autowired(required = false)
+    public void setTransactionLog(TransactionLog transactionLog) {
+        if (transactionLog.isEnabled()) {
+            transactionLog.setRetentionMillis(window.getLengthMillis() + window.getResolutionMillis());
+            this.transactionLog = transactionLog;
+            checkQueueDurability();
+        }
+    }
+
+    /**
+     * Hands single transactions to the writer thread of a queue instead of adding them on the request thread, so that
+     * only that thread writes to the store.
+     *
+     * @param transactionQueue the queue; ignored if it is disabled
+     * @throws IllegalStateException if the write-ahead log forces every transaction to disk before it is answered
+     */
+    @Autowired(required = false)
+    public void setTransactionQueue(TransactionQueue transactionQueue) {
+        if (transactionQueue.isEnabled()) {
+            this.transactionQueue = transactionQueue;
+            checkQueueDurability();
+            transactionQueue.start(this::newBatch, this::addTransactions);
+        }
+    }
+
+    /**
+     * Queued transactions are answered before the writer appends them to the log, which would break the promise of
+     * {@link TransactionLog.Sync#ALWAYS} to answer 201 only once a transaction is on disk.
+     */
+    private void checkQueueDurability() {
+        if (transactionQueue != null && transactionLog != null && transactionLog.isStrict()) {
+            throw new IllegalStateException("transaction.queue.capacity requires transaction.log.fsync interval or "
+                    + "never, as queued transactions are answered before they are on disk");
+        }
+    }
+
+    /**
+     * Replaces the system clock, e.g. with a {@link CachedClock} or with a clock that tests move forward.
+     *
+     * @param clock the clock to read the current time from
+     */
+    @Autowired(required = false)
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if accepted transactions are appended to a write-ahead log
+     */
+    public boolean hasTransactionLog() {
+        return transactionLog != null;
+    }
+
+    /**
+     * @return true if adding transactions can wait for another thread: for the write-ahead log to force them to disk
+     * or to take them from its full buffer, or for the writer of a full {@link TransactionQueue.Full#BLOCK} queue
+     */
+    public boolean isBlockingOnAdd() {
+        return transactionLog != null && (transactionLog.isStrict() || transactionLog.isWaitingForSpace())
+                || transactionQueue != null && transactionQueue.getFull() == TransactionQueue.Full.BLOCK;
+    }
+
+    /**
+     * Adds a {@code TransactionInput} to the {@link StatisticsService#bucketStore} if the
+     * transactionTime is in the past, but not older then a predefined interval. A transaction with a key is also added
+     * to the statistics of the key if it is in the default interval.
      *
      * @param input the TransactionInput
-     * @return 201 if the transaction was successfully added; 204 if transaction is older than the predefined interval
+     * @return 201 if the transaction was successfully added; 204 if transaction is older than the predefined interval;
+     * 400 if the amount does not fit into the minor units of the configured scale; 503 if the transaction could not be
+     * appended to the write-ahead log or, with the {@link TransactionQueue}, if the queue is full and rejects it. With
+     * the queue 201 means that the transaction was queued; it is added once the writer reaches it, and with the
+     * {@link TransactionQueue.Full#DROP} policy a transaction that did not fit into the full queue is answered with 201
+     * as well, although it is only counted as {@link Outcome#DROPPED}
      */
     public ResponseEntity addTransaction(TransactionInput input) {
-        Instant now = Instant.now();
-        Instant transactionTime = Instant.ofEpochMilli(input.getTimestamp());
+        long start = System.nanoTime();
+        try {
+            return add(input);
+        } finally {
+            metrics.getAddTransactionLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private ResponseEntity add(TransactionInput input) {
+        long now = clock.millis();
         //assume that a timestamp in the future will also return 204 status
-        if (!isValidTimestamp(now, transactionTime)) {
-            return new ResponseEntity(HttpStatus.NO_CONTENT);
+        if (!window.contains(now, input.getTimestamp())) {
+            metrics.count(input.getTimestamp() > now ? Outcome.FUTURE : Outcome.EXPIRED);
+            return NO_CONTENT;
         }
 
-        long transactionEpochSecond = transactionTime.getEpochSecond();
+        long amount;
+        try {
+            amount = amountScale.toUnits(input.getAmount());
+        } catch (ArithmeticException e) {
+            metrics.count(Outcome.INVALID);
+            return BAD_REQUEST;
+        }
 
-        statisticsBucketMap.merge(transactionEpochSecond, new Statistic(input.getAmount()), Statistic::merge);
-        return new ResponseEntity(HttpStatus.CREATED);
+        if (transactionQueue != null) {
+            if (transactionQueue.offer(amount, input.getTimestamp(), input.getKey(), input.getPayerId())) {
+                return CREATED;
+            }
+            metrics.count(Outcome.DROPPED);
+            return transactionQueue.getFull() == TransactionQueue.Full.DROP ? CREATED : SERVICE_UNAVAILABLE;
+        }
+
+        if (transactionLog != null) {
+            try {
+                transactionLog.awaitDurable(transactionLog.append(amount, input.getTimestamp(), input.getKey(),
+                        input.getPayerId()));
+            } catch (IOException e) {
+                metrics.count(Outcome.FAILED);
+                return SERVICE_UNAVAILABLE;
+            }
+        }
+
+        long bucket = window.bucketOf(input.getTimestamp());
+        boolean added = input.getPayerId() == null
+                ? bucketStore.add(bucket, amount, window.bucketOf(now))
+                : bucketStore.addWithPayer(bucket, amount, input.getPayerId(), window.bucketOf(now));
+        if (!added) {
+            metrics.count(Outcome.EXPIRED);
+            return NO_CONTENT;
+        }
+        if (input.getKey() != null) {
+            addKeyed(input.getKey(), amount, input.getTimestamp(), now);
+        }
+        metrics.count(Outcome.ACCEPTED);
+        return CREATED;
+    }
+
+    /**
+     * @return the fixed-point scale transaction amounts are converted to
+     */
+    public AmountScale getAmountScale() {
+        return amountScale;
+    }
+
+    /**
+     * Creates an empty batch for the current time. Transactions are grouped by second as they are added to the batch.
+     *
+     * @return the batch, not null
+     */
+    public TransactionBatch newBatch() {
+        return new TransactionBatch(amountScale, window, histogram, distinct, transactionLog != null,
+                clock.millis());
     }
 
     /**
-     * Gets the transaction statistics for the past predefined interval.
+     * Adds a batch of transactions to the {@link StatisticsService#bucketStore}, merging each time bucket of the batch
+     * into the store once.
+     *
+     * @param batch the batch created by {@link #newBatch()}
+     * @return the number of accepted, expired and invalid transactions of the batch
+     * @throws UncheckedIOException if the transactions could not be appended to the write-ahead log; they are counted
+     *                              as {@link Outcome#FAILED}, as are the transactions of a batch that fails otherwise
+     */
+    public TransactionBatchOutput addTransactions(TransactionBatch batch) {
+        long start = System.nanoTime();
+        try {
+            if (transactionLog != null && batch.logRecordCount() > 0) {
+                try {
+                    transactionLog.awaitDurable(transactionLog.append(batch.logRecords(), batch.logRecordCount()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            TransactionBatchOutput output = add(batch);
+            metrics.count(Outcome.ACCEPTED, output.getAccepted());
+            metrics.count(Outcome.EXPIRED, output.getExpired());
+            metrics.count(Outcome.INVALID, output.getInvalid());
+            return output;
+        } catch (RuntimeException e) {
+            metrics.count(Outcome.FAILED, batch.getCount());
+            throw e;
+        } finally {
+            metrics.getAddTransactionsLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private TransactionBatchOutput add(TransactionBatch batch) {
+        long count = batch.getCount();
+        long accepted = count == 0 ? 0 : bucketStore.addAll(batch, window.bucketOf(batch.getNowMillis()));
+        for (int keyed = 0; keyed < batch.keyedSize(); keyed++) {
+            addKeyed(batch.key(keyed), batch.keyedUnits(keyed), batch.keyedTimestamp(keyed), batch.getNowMillis());
+        }
+        return new TransactionBatchOutput(accepted, batch.getExpired() + count - accepted, batch.getInvalid());
+    }
+
+    /**
+     * Gets the transaction statistics for the past predefined interval. The exact sum in minor units is only rounded
+     * here; the average and the percentiles are rounded half up to the configured scale. The percentiles are estimates
+     * within the configured relative accuracy, clamped to the min and max, and the distinct count is an estimate of the
+     * number of distinct payers.
+     * <p>
+     * The statistics are only computed again after a write or at a bucket boundary; until then every call returns the
+     * same instance, which is {@link StatisticsOutput#freeze() frozen} so that no caller can change it for the others.
      *
      * @return the statistics, not null
      */
     public StatisticsOutput getStatistics() {
-        Instant now = Instant.now();
-        Long thresholdTime = getStatisticsThresholdStartTime(now).getEpochSecond();
-        StatisticsOutput result = new StatisticsOutput();
+        long start = System.nanoTime();
+        try {
+            return getCachedStatistics();
+        } finally {
+            metrics.getGetStatisticsLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private StatisticsOutput getCachedStatistics() {
+        long nowBucket = window.bucketOf(clock.millis());
+        long version = bucketStore.version();
+        CachedStatistics cached = cachedStatistics;
+        if (cached != null && cached.bucket == nowBucket && cached.version == version) {
+            return cached.statistics;
+        }
+        // a write racing with the snapshot only makes the next call compute the statistics again
+        StatisticsOutput statistics = toOutput(bucketStore.snapshot(nowBucket, defaultWindowIndex)).freeze();
+        cachedStatistics = new CachedStatistics(nowBucket, version, statistics);
+        return statistics;
+    }
 
-        statisticsBucketMap.entrySet()
-                .forEach(e -> {
-                    if (thresholdTime <= e.getKey()) {
-                        Statistic value = e.getValue();
-                        result.setSum(result.getSum() + value.getSum());
-                        result.setCount(result.getCount() + value.getCount());
-                        if (result.getMax() < value.getMax()) {
-                            result.setMax(value.getMax());
-                        }
-                        if (result.getMin() > value.getMax() || result.getMin() == 0) {
-                            result.setMin(value.getMin());
-                        }
-                    }
-                });
-        if (result.getCount() > 0) {
-            result.setAvg(result.getSum() / result.getCount());
+    /**
+     * Gets the transaction statistics for one of the configured intervals.
+     *
+     * @param window the interval, e.g. {@code 10s} or {@code 5m}
+     * @return the statistics, not null
+     * @throws IllegalArgumentException if the interval is not configured
+     */
+    public StatisticsOutput getStatistics(String window) {
+        Integer index = windowIndexes.get(TimeWindow.parseLength(window));
+        if (index == null) {
+            throw new IllegalArgumentException("Statistics window is not configured: " + window);
         }
+        return getStatistics(index);
+    }
 
-        return result;
+    /**
+     * Gets the transaction statistics of a key for the past predefined interval, at the resolution of the statistics
+     * per key. Percentiles are not kept per key.
+     *
+     * @param key the key, e.g. a merchant or account id
+     * @return the statistics, empty if no transaction of the key is in the interval or the key was evicted; not null
+     */
+    public StatisticsOutput getStatistics(long key) {
+        return toOutput(keyedStore.snapshot(key, keyWindow.bucketOf(clock.millis())));
+    }
+
+    private StatisticsOutput getStatistics(int windowIndex) {
+        return toOutput(bucketStore.snapshot(window.bucketOf(clock.millis()), windowIndex));
+    }
+
+    /**
+     * @return the counters and latencies of the service, not null
+     */
+    public StatisticsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of buckets of the longest interval that hold transactions, summed over the stripes
+     */
+    public int getLiveBucketCount() {
+        return bucketStore.liveBuckets(window.bucketOf(clock.millis()));
+    }
+
+    /**
+     * @return the number of keys statistics are kept for
+     */
+    public int getKeyCount() {
+        return keyedStore.size();
+    }
+
+    /**
+     * Writes the buckets of the statistics intervals to a snapshot file while transactions keep being added. The
+     * statistics per key are not part of the snapshot.
+     *
+     * @param path the snapshot file, replaced once the new snapshot is complete
+     * @throws IOException if the file cannot be written
+     */
+    public void writeSnapshot(Path path) throws IOException {
+        newSnapshot(window.bucketOf(clock.millis())).write(path);
+    }
+
+    /**
+     * Adds the buckets of a snapshot file that are still in the longest interval to the statistics.
+     *
+     * @param path the snapshot file written by {@link #writeSnapshot(Path)}
+     * @return the number of transactions restored
+     * @throws IOException if the file cannot be read, is not a valid snapshot or was written with a different bucket
+     *                     resolution, longest interval, histogram accuracy or distinct count precision
+     */
+    public long restoreSnapshot(Path path) throws IOException {
+        StatisticsSnapshot snapshot = StatisticsSnapshot.read(path, snapshotLayout);
+        return bucketStore.restore(snapshot, window.bucketOf(clock.millis()));
+    }
+
+    /**
+     * Gets the buckets of the statistics intervals of this node, for other nodes to merge them with their own, in the
+     * format of the snapshot files.
+     *
+     * @return the partial statistics, not null
+     * @throws IOException if the partials are too large for an array
+     */
+    public byte[] getPartials() throws IOException {
+        return newSnapshot(window.bucketOf(clock.millis())).toBytes();
+    }
+
+    /**
+     * Merges the partial statistics of the other nodes of the cluster with the statistics of this node, replacing the
+     * previously merged statistics. Buckets are merged like the stripes of a node, so the result does not depend on
+     * the order of the nodes.
+     * <p>
+     * The snapshots of this node and of the peers only hold their buckets with transactions, and they are merged into
+     * the same store on every pull, replacing its buckets under one lock. A pull therefore allocates in proportion to
+     * the non-empty buckets of the nodes rather than the histograms and registers of every bucket of the intervals.
+     *
+     * @param partials the partials of the other nodes, read with {@link #readPartials(byte[])}
+     */
+    void mergePartials(List<StatisticsSnapshot> partials) {
+        long nowBucket = window.bucketOf(clock.millis());
+        List<StatisticsSnapshot> snapshots = new ArrayList<>(partials.size() + 1);
+        snapshots.add(newSnapshot(nowBucket));
+        snapshots.addAll(partials);
+        StatisticsBucketStore merged = clusterStore;
+        if (merged == null) {
+            merged = new StatisticsBucketStore(windowSizes, 1, histogram, distinct);
+        }
+        merged.replace(snapshots, nowBucket);
+        clusterStore = merged;
     }
 
     /**
-     * Scheduled method that runs a bucket cleanup.
+     * Reads the partial statistics of another node, checking that the node has the same bucket resolution, intervals,
+     * histogram accuracy and distinct count precision before their buckets are allocated. Only the buckets the peer
+     * sent records for are allocated.
+     *
+     * @param bytes the partials of another node, at most {@link #getMaxPartialsLength()} bytes
+     * @return the partials, not null
+     * @throws IOException if the bytes are not valid partials or the node has another configuration
      */
-    @Scheduled(fixedRate = 1000)
-    public void cleanStatisticsMap() {
-        Instant now = Instant.now();
-        Long thresholdTime = getStatisticsThresholdStartTime(now).getEpochSecond();
+    StatisticsSnapshot readPartials(byte[] bytes) throws IOException {
+        return StatisticsSnapshot.fromBytes(bytes, snapshotLayout);
+    }
 
-        statisticsBucketMap.keySet().stream()
-                .filter(statisticTimeStamp -> thresholdTime > statisticTimeStamp)
-                .forEach(statisticsBucketMap::remove);
+    /**
+     * @return the length of the partials of a node of this configuration with every bucket and histogram bin in use
+     */
+    long getMaxPartialsLength() {
+        return snapshotLayout.maxLength();
     }
 
     /**
-     * Checks if an {@code Instant} is predefined threshold period of time, before another.
+     * Gets the statistics of the default interval of the whole cluster, as of the last merge of the partial statistics
+     * of the other nodes; buckets keep expiring in between.
      *
-     * @param now             the instant for which to check against
-     * @param transactionTime the instant for which to check
-     * @return true if the Instant is in the time interval (including the interval ends), false otherwise
+     * @return the statistics, the statistics of this node until partials were merged; not null
      */
-    private boolean isValidTimestamp(Instant now, Instant transactionTime) {
-        long until = transactionTime.until(now, ChronoUnit.SECONDS);
-        return until <= transactionTtl && until >= 0;
+    public StatisticsOutput getClusterStatistics() {
+        StatisticsBucketStore merged = clusterStore;
+        if (merged == null) {
+            return getStatistics();
+        }
+        return toOutput(merged.snapshot(window.bucketOf(clock.millis()), defaultWindowIndex));
+    }
+
+    private StatisticsSnapshot newSnapshot(long nowBucket) {
+        StatisticsSnapshot snapshot = new StatisticsSnapshot(window.getResolutionMillis(),
+                nowBucket - window.getBucketCount() + 1, window.getBucketCount(),
+                histogram == null ? 0 : histogram.getBinCount(), distinct == null ? 0 : distinct.getRegisterCount());
+        bucketStore.copyInto(snapshot);
+        return snapshot;
     }
 
     /**
-     * Subtracts the threshold time(time duration in seconds which to calculate the statistics) from an {@code Instant}.
+     * Adds the transactions of the write-ahead log that are still in the longest interval to the statistics.
      *
-     * @param now Instant from which to subtract
-     * @return Instant minus the threshold time
+     * @return the number of transactions read from the log
+     * @throws IOException if the log cannot be read
      */
-    private Instant getStatisticsThresholdStartTime(Instant now) {
-        return now.minus(transactionTtl, ChronoUnit.SECONDS);
+    public long replayTransactionLog() throws IOException {
+        TransactionBatch[] batch = {newReplayBatch()};
+        long replayed = transactionLog.replay((units, timestamp, key, hasKey, payerId, hasPayer) -> {
+            if (batch[0].addUnits(units, timestamp)) {
+                if (hasKey) {
+                    batch[0].attachKey(key);
+                }
+                if (hasPayer) {
+                    batch[0].attachPayer(payerId);
+                }
+            }
+            if (batch[0].size() >= REPLAY_BATCH_SIZE) {
+                add(batch[0]);
+                batch[0] = newReplayBatch();
+            }
+        });
+        add(batch[0]);
+        return replayed;
+    }
+
+    private TransactionBatch newReplayBatch() {
+        return new TransactionBatch(amountScale, window, histogram, distinct, false, clock.millis());
+    }
+
+    private void addKeyed(long key, long amount, long timestamp, long now) {
+        if (keyWindow.contains(now, timestamp)) {
+            keyedStore.add(key, keyWindow.bucketOf(timestamp), amount, keyWindow.bucketOf(now));
+        }
+    }
+
+    private StatisticsOutput toOutput(Statistic statistic) {
+        StatisticsOutput result = new StatisticsOutput();
+        if (statistic.getCount() > 0) {
+            BigInteger sum = statistic.getSum();
+            result.setSum(amountScale.toDecimal(sum).doubleValue());
+            result.setCount(statistic.getCount());
+            result.setMax(amountScale.toDecimal(statistic.getMax()).doubleValue());
+            result.setMin(amountScale.toDecimal(statistic.getMin()).doubleValue());
+            result.setAvg(amountScale.divide(sum, statistic.getCount()).doubleValue());
+            if (statistic.getHistogram() != null) {
+                Map<String, Double> percentiles = new LinkedHashMap<>();
+                for (int i = 0; i < quantiles.length; i++) {
+                    long units = Math.round(histogram.quantile(statistic.getHistogram(), statistic.getCount(),
+                            quantiles[i]));
+                    units = Math.max(statistic.getMin(), Math.min(statistic.getMax(), units));
+                    percentiles.put(quantileNames[i], amountScale.toDecimal(units).doubleValue());
+                }
+                result.setPercentiles(percentiles);
+            }
+            if (statistic.getRegisters() != null) {
+                result.setDistinctCount(distinct.estimate(statistic.getRegisters()));
+            }
+        }
+
+        return result;
+    }
+
+    private static final class CachedStatistics {
+
+        private final long bucket;
+        private final long version;
+        private final StatisticsOutput statistics;
+
+        CachedStatistics(long bucket, long version, StatisticsOutput statistics) {
+            this.bucket = bucket;
+            this.version = version;
+            this.statistics = statistics;
+        }
     }
 }
@@ -0,0 +1,440 @@
+package com.challenge.service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Copy of the time buckets of a {@link StatisticsBucketStore}, with the stripes merged into one bucket per time bucket,
+ * that is written to and read from a memory-mapped file, or sent to other nodes as the partial statistics of a node.
+ * <p>
+ * The format is big endian: a header of the magic {@code STAT}, the format version, the bucket resolution in
+ * milliseconds, the histogram bin count, the distinct count register count, the first time bucket, the bucket count
+ * and the record count, followed by one record per non-empty bucket and a CRC32 of everything before it. A record
+ * holds the time bucket, the high and low word of the sum, the count, min and max in minor units; then the first and
+ * last used histogram bin and the counts of the bins in between if there are histograms, and the registers if distinct
+ * payers are counted. The file is written next to its final path and moved over it once complete, so a crash while
+ * writing leaves the previous snapshot in place.
+ * <p>
+ * In memory the snapshot only holds the buckets with transactions, like the records of the format, so that taking a
+ * snapshot of an idle store or of fine bucket resolutions does not allocate the histograms of every bucket.
+ */
+class StatisticsSnapshot {
+
+    /**
+     * The header a snapshot must have to be merged with the buckets of this node, checked before the buckets of a file
+     * or of the partials of a peer are allocated, so that neither can make the node allocate arrays of any size.
+     */
+    static final class Layout {
+
+        private final long resolutionMillis;
+        private final int bucketCount;
+        private final int bins;
+        private final int registerCount;
+
+        /**
+         * @param resolutionMillis the bucket resolution in milliseconds
+         * @param bucketCount      the number of time buckets
+         * @param bins             the number of histogram bins of a bucket; 0 without histograms
+         * @param registerCount    the number of distinct count registers of a bucket; 0 without registers
+         */
+        Layout(long resolutionMillis, int bucketCount, int bins, int registerCount) {
+            this.resolutionMillis = resolutionMillis;
+            this.bucketCount = bucketCount;
+            this.bins = bins;
+            this.registerCount = registerCount;
+        }
+
+        /**
+         * @return the length of a snapshot of this layout with every bucket and histogram bin in use
+         */
+        long maxLength() {
+            return HEADER_BYTES + CHECKSUM_BYTES
+                    + bucketCount * (RECORD_BYTES + registerCount + (bins == 0 ? 0 : 8 + 8L * bins));
+        }
+
+        private void check(long resolutionMillis, int bucketCount, int bins, int registerCount, Object source)
+                throws IOException {
+            if (resolutionMillis != this.resolutionMillis || bucketCount != this.bucketCount || bins != this.bins
+                    || registerCount != this.registerCount) {
+                throw new IOException("Statistics snapshot does not match the configuration: " + source);
+            }
+        }
+    }
+
+    private static final int MAGIC = 0x53544154;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int RECORD_BYTES = 48;
+    private static final int CHECKSUM_BYTES = 8;
+    private static final int INITIAL_GROUPS = 8;
+
+    private final long resolutionMillis;
+    private final int bins;
+    private final int registerCount;
+    private final long firstBucket;
+    private final int bucketCount;
+
+    /**
+     * The group of every bucket of the snapshot plus one, 0 for a bucket without transactions; allocated with the first
+     * group, so that an empty snapshot only allocates its header.
+     */
+    private int[] groupOfBucket;
+    private int groupCount;
+    private long[] groupBuckets = new long[0];
+    private long[] sumHighs = new long[0];
+    private long[] sumLows = new long[0];
+    private long[] counts = new long[0];
+    private long[] mins = new long[0];
+    private long[] maxs = new long[0];
+    private int[] lowBins = new int[0];
+    private int[] highBins = new int[0];
+    private long[][] binCounts = new long[0][];
+    private byte[][] registers = new byte[0][];
+
+    /**
+     * @param resolutionMillis the bucket resolution in milliseconds
+     * @param firstBucket      the oldest time bucket of the snapshot
+     * @param bucketCount      the number of time buckets of the snapshot
+     * @param bins             the number of histogram bins of a bucket; 0 without histograms
+     * @param registerCount    the number of distinct count registers of a bucket; 0 without registers
+     */
+    StatisticsSnapshot(long resolutionMillis, long firstBucket, int bucketCount, int bins, int registerCount) {
+        this.resolutionMillis = resolutionMillis;
+        this.bins = bins;
+        this.registerCount = registerCount;
+        this.firstBucket = firstBucket;
+        this.bucketCount = bucketCount;
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param path   the file
+     * @param layout the layout the snapshot must have
+     * @return the snapshot, not null
+     * @throws IOException if the file cannot be read, is not a valid snapshot or does not have the layout
+     */
+    static StatisticsSnapshot read(Path path, Layout layout) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES + CHECKSUM_BYTES || length > Math.min(layout.maxLength(), Integer.MAX_VALUE)) {
+                throw new IOException("Invalid statistics snapshot length " + length + ": " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            ByteBuffer content = buffer.duplicate();
+            content.limit((int) length - CHECKSUM_BYTES);
+            CRC32 checksum = new CRC32();
+            checksum.update(content);
+            if (checksum.getValue() != buffer.getLong((int) length - CHECKSUM_BYTES)) {
+                throw new IOException("Statistics snapshot checksum mismatch: " + path);
+            }
+            return read(buffer, layout, path);
+        }
+    }
+
+    /**
+     * Reads a snapshot from the bytes written by {@link #toBytes()}.
+     *
+     * @param bytes  the snapshot
+     * @param layout the layout the snapshot must have
+     * @return the snapshot, not null
+     * @throws IOException if the bytes are not a valid snapshot or do not have the layout
+     */
+    static StatisticsSnapshot fromBytes(byte[] bytes, Layout layout) throws IOException {
+        if (bytes.length < HEADER_BYTES + CHECKSUM_BYTES || bytes.length > layout.maxLength()) {
+            throw new IOException("Invalid statistics snapshot length " + bytes.length);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, bytes.length - CHECKSUM_BYTES);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (checksum.getValue() != buffer.getLong(bytes.length - CHECKSUM_BYTES)) {
+            throw new IOException("Statistics snapshot checksum mismatch");
+        }
+        return read(buffer, layout, "partials");
+    }
+
+    private static StatisticsSnapshot read(ByteBuffer buffer, Layout layout, Object source) throws IOException {
+        buffer.limit(buffer.capacity() - CHECKSUM_BYTES);
+        try {
+            return readContent(buffer, layout, source);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Invalid statistics snapshot: " + source, e);
+        }
+    }
+
+    private static StatisticsSnapshot readContent(ByteBuffer buffer, Layout layout, Object source)
+            throws IOException {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a statistics snapshot of version " + VERSION + ": " + source);
+        }
+        long resolutionMillis = buffer.getLong();
+        int bins = buffer.getInt();
+        int registerCount = buffer.getInt();
+        long firstBucket = buffer.getLong();
+        int bucketCount = buffer.getInt();
+        int records = buffer.getInt();
+        if (bucketCount < 0 || bins < 0 || registerCount < 0 || records < 0 || records > bucketCount) {
+            throw new IOException("Invalid statistics snapshot header: " + source);
+        }
+        layout.check(resolutionMillis, bucketCount, bins, registerCount, source);
+        StatisticsSnapshot snapshot = new StatisticsSnapshot(resolutionMillis, firstBucket, bucketCount, bins,
+                registerCount);
+        for (int record = 0; record < records; record++) {
+            long bucket = buffer.getLong();
+            if (!snapshot.contains(bucket)) {
+                throw new IOException("Statistics snapshot bucket " + bucket + " out of range: " + source);
+            }
+            snapshot.mergeBucket(bucket, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    buffer.getLong());
+            if (bins > 0) {
+                int low = buffer.getInt();
+                int high = buffer.getInt();
+                if (low < 0 || high >= bins) {
+                    throw new IOException("Statistics snapshot bins " + low + ".." + high + " out of range: " + source);
+                }
+                for (int bin = low; bin <= high; bin++) {
+                    snapshot.addBin(bucket, bin, buffer.getLong());
+                }
+            }
+            for (int register = 0; register < registerCount; register++) {
+                snapshot.mergeRegister(bucket, register, buffer.get());
+            }
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Trailing data in statistics snapshot: " + source);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot to a file, replacing the previous snapshot once the new one is complete.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be written
+     */
+    void write(Path path) throws IOException {
+        int length = length();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            write(buffer);
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the snapshot in the format of the file
+     * @throws IOException if the snapshot is too large for an array
+     */
+    byte[] toBytes() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length());
+        write(buffer);
+        return buffer.array();
+    }
+
+    private int length() throws IOException {
+        long length = HEADER_BYTES + CHECKSUM_BYTES;
+        for (int group = 0; group < groupCount; group++) {
+            if (counts[group] > 0) {
+                length += recordLength(group);
+            }
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Statistics snapshot too large: " + length + " bytes");
+        }
+        return (int) length;
+    }
+
+    private void write(ByteBuffer buffer) {
+        int records = 0;
+        for (int group = 0; group < groupCount; group++) {
+            if (counts[group] > 0) {
+                records++;
+            }
+        }
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(resolutionMillis)
+                .putInt(bins)
+                .putInt(registerCount)
+                .putLong(firstBucket)
+                .putInt(bucketCount)
+                .putInt(records);
+        for (int index = 0; groupOfBucket != null && index < bucketCount; index++) {
+            int group = groupOfBucket[index] - 1;
+            if (group >= 0 && counts[group] > 0) {
+                writeRecord(buffer, group);
+            }
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        CRC32 checksum = new CRC32();
+        checksum.update(content);
+        buffer.putLong(checksum.getValue());
+    }
+
+    private long recordLength(int group) {
+        long length = RECORD_BYTES + registerCount;
+        if (bins > 0) {
+            length += 8 + 8L * Math.max(0, highBins[group] - lowBins[group] + 1);
+        }
+        return length;
+    }
+
+    private void writeRecord(ByteBuffer buffer, int group) {
+        buffer.putLong(bucket(group))
+                .putLong(sumHighs[group])
+                .putLong(sumLows[group])
+                .putLong(counts[group])
+                .putLong(mins[group])
+                .putLong(maxs[group]);
+        if (bins > 0) {
+            // an empty range is written as 0..-1
+            int low = Math.min(lowBins[group], highBins[group] + 1);
+            buffer.putInt(low).putInt(highBins[group]);
+            for (int bin = low; bin <= highBins[group]; bin++) {
+                buffer.putLong(binCounts[group][bin]);
+            }
+        }
+        if (registerCount > 0) {
+            buffer.put(registers[group]);
+        }
+    }
+
+    /**
+     * @param bucket a time bucket
+     * @return true if the bucket is one of the buckets of the snapshot
+     */
+    boolean contains(long bucket) {
+        return bucket >= firstBucket && bucket - firstBucket < bucketCount;
+    }
+
+    private int groupOf(long bucket) {
+        if (groupOfBucket == null) {
+            groupOfBucket = new int[bucketCount];
+        }
+        int index = (int) (bucket - firstBucket);
+        int group = groupOfBucket[index] - 1;
+        if (group < 0) {
+            group = newGroup(bucket);
+            groupOfBucket[index] = group + 1;
+        }
+        return group;
+    }
+
+    private int newGroup(long bucket) {
+        if (groupCount == groupBuckets.length) {
+            int capacity = Math.max(INITIAL_GROUPS, groupCount * 2);
+            groupBuckets = Arrays.copyOf(groupBuckets, capacity);
+            sumHighs = Arrays.copyOf(sumHighs, capacity);
+            sumLows = Arrays.copyOf(sumLows, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+            lowBins = Arrays.copyOf(lowBins, capacity);
+            highBins = Arrays.copyOf(highBins, capacity);
+            binCounts = Arrays.copyOf(binCounts, capacity);
+            registers = Arrays.copyOf(registers, capacity);
+        }
+        int group = groupCount++;
+        groupBuckets[group] = bucket;
+        mins[group] = Long.MAX_VALUE;
+        maxs[group] = Long.MIN_VALUE;
+        lowBins[group] = Integer.MAX_VALUE;
+        highBins[group] = -1;
+        binCounts[group] = bins == 0 ? null : new long[bins];
+        registers[group] = registerCount == 0 ? null : new byte[registerCount];
+        return group;
+    }
+
+    /**
+     * Merges the aggregate of the transactions of a bucket, e.g. of one stripe, into the bucket.
+     */
+    void mergeBucket(long bucket, long sumHigh, long sumLow, long count, long min, long max) {
+        int group = groupOf(bucket);
+        long low = sumLows[group] + sumLow;
+        sumHighs[group] += sumHigh + (Long.compareUnsigned(low, sumLows[group]) < 0 ? 1 : 0);
+        sumLows[group] = low;
+        counts[group] += count;
+        mins[group] = Math.min(mins[group], min);
+        maxs[group] = Math.max(maxs[group], max);
+    }
+
+    /**
+     * Adds to the count of a histogram bin of a bucket.
+     */
+    void addBin(long bucket, int bin, long count) {
+        int group = groupOf(bucket);
+        binCounts[group][bin] += count;
+        lowBins[group] = Math.min(lowBins[group], bin);
+        highBins[group] = Math.max(highBins[group], bin);
+    }
+
+    /**
+     * Merges a register rank into a distinct count register of a bucket.
+     */
+    void mergeRegister(long bucket, int register, byte rank) {
+        byte[] ranks = registers[groupOf(bucket)];
+        if (rank > ranks[register]) {
+            ranks[register] = rank;
+        }
+    }
+
+    /**
+     * @return the number of buckets with transactions, which are the groups {@code 0} to {@code groupCount() - 1}
+     */
+    int groupCount() {
+        return groupCount;
+    }
+
+    long bucket(int group) {
+        return groupBuckets[group];
+    }
+
+    long count(int group) {
+        return counts[group];
+    }
+
+    long sumHigh(int group) {
+        return sumHighs[group];
+    }
+
+    long sumLow(int group) {
+        return sumLows[group];
+    }
+
+    long min(int group) {
+        return mins[group];
+    }
+
+    long max(int group) {
+        return maxs[group];
+    }
+
+    int lowBin(int group) {
+        return lowBins[group];
+    }
+
+    int highBin(int group) {
+        return highBins[group];
+    }
+
+    long binCount(int group, int bin) {
+        return binCounts[group][bin];
+    }
+
+    byte register(int group, int register) {
+        return registers[group][register];
+    }
+}
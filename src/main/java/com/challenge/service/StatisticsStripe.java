@@ -0,0 +1,724 @@
+package com.challenge.service;
+
+import com.challenge.domain.HyperLogLog;
+import com.challenge.domain.LogHistogram;
+import com.challenge.domain.Statistic;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One stripe of the {@link StatisticsBucketStore}: a fixed-size circular array of time buckets indexed by
+ * {@code bucket % size}, together with rolling aggregates of the windows it serves.
+ * <p>
+ * The windows all end at the newest bucket and differ in length, the longest one spanning the whole array. The buckets
+ * are split by age into bands, band {@code i} holding the buckets that are in window {@code i} but not in the shorter
+ * windows, and the sum and count of every band are updated when a transaction arrives. A bucket is moved to the next
+ * band when it ages past a window and removed from the aggregate when it rolls out of the longest one, so a write
+ * touches a single band whatever the number of windows and the sum of a window is the sum of its bands. Min and max
+ * cannot be decremented, so they are kept in a segment tree over the buckets whose root holds the extremes of the
+ * longest window; shorter windows are a range query over the tree. Reading the statistics is therefore a copy of the
+ * aggregate, taken with an optimistic read so that readers never block writers.
+ * <p>
+ * If percentiles are enabled every bucket also holds the bin counts of a {@link LogHistogram} and every band the sum of
+ * the bin counts of its buckets, maintained like the band sums. A write increments one bucket bin and one band bin, and
+ * a read adds up the band histograms of the window, so its cost depends on the number of windows and bins but not on
+ * the number of buckets or transactions. Buckets remember the range of bins they used so that moving a sparse bucket
+ * between bands only touches those bins.
+ * <p>
+ * If distinct payers are counted every bucket also holds {@link HyperLogLog} registers. Registers cannot be decremented,
+ * so the registers of every window are merged from its buckets with a register-wise max once the head moved, by the
+ * first read that needs them, and kept up to date by the writes until the head moves again. Reads in between copy
+ * the registers of the window instead of merging the registers of all its buckets.
+ * <p>
+ * Amounts are in minor units and sums are 128 bit integers split into a high and a low word, so adding and removing
+ * buckets is exact and cannot overflow.
+ * <p>
+ * The bucket arrays are {@link LongColumn}s, {@link IntColumn}s and {@link ByteColumn}s, either on the heap or in
+ * direct memory depending on the {@link StoreMode}; only the band aggregates, whose size does not depend on the number
+ * of buckets, always stay on the heap.
+ */
+class StatisticsStripe {
+
+    static final int ADDED = 0;
+    static final int REJECTED = 1;
+    static final int CONTENDED = 2;
+
+    private final int size;
+    private final int leafOffset;
+    private final int[] windowSizes;
+    private final IntColumn bandOfAge;
+
+    private final LongColumn bucketIds;
+    private final LongColumn bucketSumHighs;
+    private final LongColumn bucketSumLows;
+    private final LongColumn bucketCounts;
+    private final LongColumn treeMins;
+    private final LongColumn treeMaxs;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final long[] bandSumHighs;
+    private final long[] bandSumLows;
+    private final long[] bandCounts;
+
+    private final int bins;
+    private final IntColumn bucketBins;
+    private final IntColumn bucketLowBins;
+    private final IntColumn bucketHighBins;
+    private final long[][] bandBins;
+
+    private final int registerCount;
+    private final ByteColumn bucketRegisters;
+    private final ByteColumn bucketHasRegisters;
+
+    /**
+     * The registers of every window merged from its buckets as of {@link #registersHead}, written under the write lock.
+     */
+    private final byte[][] windowRegisters;
+
+    /**
+     * The head bucket the {@link #windowRegisters} are up to date for.
+     */
+    private volatile long registersHead = Long.MIN_VALUE;
+
+    /**
+     * Incremented under the write lock by every write, so that readers can tell whether the stripe changed since
+     * they last read it.
+     */
+    private volatile long version;
+
+    private volatile long headBucket = Long.MIN_VALUE;
+
+    /**
+     * The histogram of the time spent in {@link #advance(long)}, or null to not record it. Set before the stripe is
+     * shared.
+     */
+    private LatencyHistogram expiryLatency;
+
+    /**
+     * @param windowSizes the number of buckets of every window, strictly ascending; the last one is the number of
+     *                    buckets of the stripe
+     * @param histogram   the binning of the percentile histograms, or null to keep no histograms
+     * @param distinct    the distinct payer count registers, or null to keep no registers
+     * @param mode        where to keep the columns of the buckets
+     */
+    StatisticsStripe(int[] windowSizes, LogHistogram histogram, HyperLogLog distinct, StoreMode mode) {
+        if (windowSizes.length == 0 || windowSizes[0] <= 0) {
+            throw new IllegalArgumentException("Bucket store size must be positive");
+        }
+        for (int window = 1; window < windowSizes.length; window++) {
+            if (windowSizes[window] <= windowSizes[window - 1]) {
+                throw new IllegalArgumentException("Window sizes must be strictly ascending");
+            }
+        }
+        this.size = windowSizes[windowSizes.length - 1];
+        this.windowSizes = windowSizes.clone();
+        this.bandOfAge = mode.intColumn(size);
+        for (int age = 0, band = 0; age < size; age++) {
+            if (age == windowSizes[band]) {
+                band++;
+            }
+            bandOfAge.set(age, band);
+        }
+        this.bandSumHighs = new long[windowSizes.length];
+        this.bandSumLows = new long[windowSizes.length];
+        this.bandCounts = new long[windowSizes.length];
+        this.bins = histogram == null ? 0 : histogram.getBinCount();
+        this.bucketBins = mode.intColumn(Math.multiplyExact(size, bins));
+        this.bucketLowBins = mode.intColumn(histogram == null ? 0 : size);
+        this.bucketHighBins = mode.intColumn(histogram == null ? 0 : size);
+        this.bandBins = new long[windowSizes.length][bins];
+        bucketLowBins.fill(0, histogram == null ? 0 : size, Integer.MAX_VALUE);
+        bucketHighBins.fill(0, histogram == null ? 0 : size, -1);
+        this.registerCount = distinct == null ? 0 : distinct.getRegisterCount();
+        this.bucketRegisters = mode.byteColumn(Math.multiplyExact(size, registerCount));
+        this.bucketHasRegisters = mode.byteColumn(distinct == null ? 0 : size);
+        this.windowRegisters = new byte[distinct == null ? 0 : windowSizes.length][registerCount];
+        this.leafOffset = Integer.highestOneBit(size) == size ? size : Integer.highestOneBit(size) << 1;
+        this.bucketIds = mode.longColumn(size);
+        this.bucketSumHighs = mode.longColumn(size);
+        this.bucketSumLows = mode.longColumn(size);
+        this.bucketCounts = mode.longColumn(size);
+        this.treeMins = mode.longColumn(2 * leafOffset);
+        this.treeMaxs = mode.longColumn(2 * leafOffset);
+        bucketIds.fill(0, size, Long.MIN_VALUE);
+        treeMins.fill(0, 2 * leafOffset, Long.MAX_VALUE);
+        treeMaxs.fill(0, 2 * leafOffset, Long.MIN_VALUE);
+    }
+
+    /**
+     * Adds an amount to a time bucket.
+     *
+     * @param bucket      the time bucket of the transaction
+     * @param amount      the transaction amount in minor units
+     * @param bin         the histogram bin of the amount, ignored without histograms
+     * @param cell        the register and rank of the payer, see {@link HyperLogLog#cellOf(long)}; -1 without payer
+     * @param nowBucket   the current time bucket, which is the newest bucket of the window
+     * @return true if the amount was added; false if the bucket is outside of the window
+     */
+    boolean add(long bucket, long amount, int bin, int cell, long nowBucket) {
+        return add(lock.writeLock(), bucket, amount, bin, cell, nowBucket);
+    }
+
+    /**
+     * Adds an amount to a time bucket if the stripe is not being written by another thread.
+     *
+     * @param bucket      the time bucket of the transaction
+     * @param amount      the transaction amount in minor units
+     * @param bin         the histogram bin of the amount, ignored without histograms
+     * @param cell        the register and rank of the payer, see {@link HyperLogLog#cellOf(long)}; -1 without payer
+     * @param nowBucket   the current time bucket, which is the newest bucket of the window
+     * @return {@link #ADDED}, {@link #REJECTED} or {@link #CONTENDED} if the stripe is locked
+     */
+    int tryAdd(long bucket, long amount, int bin, int cell, long nowBucket) {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0L) {
+            return CONTENDED;
+        }
+        return add(stamp, bucket, amount, bin, cell, nowBucket) ? ADDED : REJECTED;
+    }
+
+    private boolean add(long stamp, long bucket, long amount, int bin, int cell, long nowBucket) {
+        try {
+            advance(nowBucket);
+            if (!mergeBucket(bucket, amount >> 63, amount, 1, amount, amount)) {
+                return false;
+            }
+            if (bins > 0) {
+                addToBin(bucket, bin, 1);
+            }
+            if (registerCount > 0 && cell >= 0) {
+                addToRegister(bucket, cell);
+            }
+            version++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Merges every group of a batch into its bucket if the stripe is not being written by another thread.
+     *
+     * @param batch     the batch
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions added, or -1 if the stripe is locked
+     */
+    long tryAddAll(TransactionBatch batch, long nowBucket) {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0L) {
+            return -1;
+        }
+        return addAll(stamp, batch, nowBucket);
+    }
+
+    /**
+     * Merges every group of a batch into its bucket.
+     *
+     * @param batch     the batch
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions added
+     */
+    long addAll(TransactionBatch batch, long nowBucket) {
+        return addAll(lock.writeLock(), batch, nowBucket);
+    }
+
+    private long addAll(long stamp, TransactionBatch batch, long nowBucket) {
+        try {
+            advance(nowBucket);
+            long added = 0;
+            for (int group = 0; group < batch.groupCount(); group++) {
+                long groupCount = batch.count(group);
+                if (groupCount > 0 && mergeBucket(batch.bucket(group), batch.sumHigh(group), batch.sumLow(group),
+                        groupCount, batch.min(group), batch.max(group))) {
+                    added += groupCount;
+                }
+            }
+            if (bins > 0) {
+                for (int cell = 0; cell < batch.binCellCount(); cell++) {
+                    long bucket = batch.bucket(batch.binCellGroup(cell));
+                    if (bucket <= headBucket && bucket > headBucket - size) {
+                        addToBin(bucket, batch.binCellBin(cell), 1);
+                    }
+                }
+            }
+            if (registerCount > 0) {
+                for (int payer = 0; payer < batch.payerCount(); payer++) {
+                    long bucket = batch.bucket(batch.payerGroup(payer));
+                    if (bucket <= headBucket && bucket > headBucket - size) {
+                        addToRegister(bucket, batch.payerCell(payer));
+                    }
+                }
+            }
+            version++;
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void addToBin(long bucket, int bin, long binCount) {
+        int index = indexOf(bucket);
+        bucketBins.set(index * bins + bin, (int) (bucketBins.get(index * bins + bin) + binCount));
+        if (bin < bucketLowBins.get(index)) {
+            bucketLowBins.set(index, bin);
+        }
+        if (bin > bucketHighBins.get(index)) {
+            bucketHighBins.set(index, bin);
+        }
+        bandBins[bandOfAge.get((int) (headBucket - bucket))][bin] += binCount;
+    }
+
+    private void addToRegister(long bucket, int cell) {
+        int index = indexOf(bucket);
+        int register = HyperLogLog.registerOf(cell);
+        byte rank = HyperLogLog.rankOf(cell);
+        if (rank > bucketRegisters.get(index * registerCount + register)) {
+            bucketRegisters.set(index * registerCount + register, rank);
+        }
+        bucketHasRegisters.set(index, (byte) 1);
+        if (registersHead == headBucket) {
+            for (int window = bandOfAge.get((int) (headBucket - bucket)); window < windowSizes.length; window++) {
+                if (rank > windowRegisters[window][register]) {
+                    windowRegisters[window][register] = rank;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the registers of every window from its buckets if the head moved since they were last merged.
+     */
+    private void mergeWindowRegisters() {
+        long stamp = lock.writeLock();
+        try {
+            long head = headBucket;
+            if (registersHead == head) {
+                return;
+            }
+            for (int window = 0; window < windowSizes.length; window++) {
+                byte[] merged = windowRegisters[window];
+                if (window == 0) {
+                    Arrays.fill(merged, (byte) 0);
+                } else {
+                    System.arraycopy(windowRegisters[window - 1], 0, merged, 0, registerCount);
+                }
+                for (int age = window == 0 ? 0 : windowSizes[window - 1]; age < windowSizes[window]; age++) {
+                    int index = indexOf(head - age);
+                    if (bucketHasRegisters.get(index) != 0) {
+                        bucketRegisters.maxInto(merged, index * registerCount);
+                    }
+                }
+            }
+            registersHead = head;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean mergeBucket(long bucket, long bucketSumHigh, long bucketSumLow, long bucketCount,
+                                long bucketMin, long bucketMax) {
+        if (bucket > headBucket || bucket <= headBucket - size) {
+            return false;
+        }
+        int index = indexOf(bucket);
+        if (bucketIds.get(index) != bucket) {
+            bucketIds.set(index, bucket);
+            bucketSumHighs.set(index, 0);
+            bucketSumLows.set(index, 0);
+            bucketCounts.set(index, 0);
+        }
+        long low = bucketSumLows.get(index) + bucketSumLow;
+        bucketSumHighs.set(index, bucketSumHighs.get(index) + bucketSumHigh
+                + (Long.compareUnsigned(low, bucketSumLows.get(index)) < 0 ? 1 : 0));
+        bucketSumLows.set(index, low);
+        bucketCounts.set(index, bucketCounts.get(index) + bucketCount);
+        addToBand(bandOfAge.get((int) (headBucket - bucket)), bucketSumHigh, bucketSumLow, bucketCount);
+        int node = leafOffset + index;
+        if (bucketMin < treeMins.get(node) || bucketMax > treeMaxs.get(node)) {
+            treeMins.set(node, Math.min(treeMins.get(node), bucketMin));
+            treeMaxs.set(node, Math.max(treeMaxs.get(node), bucketMax));
+            propagate(node);
+        }
+        return true;
+    }
+
+    /**
+     * @return a number that changes with every write to the stripe
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Merges the aggregate of a window ending at a time bucket into a {@code Statistic}.
+     *
+     * @param target    the statistic to merge into
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @param window    the index of the window in the window sizes of the stripe
+     * @param scratch   an array of the histogram bin count to read the histogram of the window into, or null to skip
+     *                  the histogram
+     * @param registers an array of the register count to read the distinct count registers of the window into, or
+     *                  null to skip the registers
+     */
+    void mergeInto(Statistic target, long nowBucket, int window, long[] scratch, byte[] registers) {
+        if (headBucket < nowBucket) {
+            expire(nowBucket);
+        }
+        if (registers != null && registersHead != headBucket) {
+            mergeWindowRegisters();
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        boolean locked = false;
+        long snapshotSumHigh;
+        long snapshotSumLow;
+        long snapshotCount;
+        long snapshotMin;
+        long snapshotMax;
+        try {
+            while (true) {
+                snapshotSumHigh = 0;
+                snapshotSumLow = 0;
+                snapshotCount = 0;
+                for (int band = 0; band <= window; band++) {
+                    long low = snapshotSumLow + bandSumLows[band];
+                    snapshotSumHigh += bandSumHighs[band] + (Long.compareUnsigned(low, snapshotSumLow) < 0 ? 1 : 0);
+                    snapshotSumLow = low;
+                    snapshotCount += bandCounts[band];
+                }
+                if (window == windowSizes.length - 1) {
+                    snapshotMin = treeMins.get(1);
+                    snapshotMax = treeMaxs.get(1);
+                } else {
+                    long head = headBucket;
+                    int from = indexOf(head - windowSizes[window] + 1);
+                    int to = indexOf(head);
+                    if (from <= to) {
+                        snapshotMin = rangeMin(from, to);
+                        snapshotMax = rangeMax(from, to);
+                    } else {
+                        snapshotMin = Math.min(rangeMin(from, size - 1), rangeMin(0, to));
+                        snapshotMax = Math.max(rangeMax(from, size - 1), rangeMax(0, to));
+                    }
+                }
+                if (scratch != null) {
+                    Arrays.fill(scratch, 0);
+                    for (int band = 0; band <= window; band++) {
+                        long[] counts = bandBins[band];
+                        for (int bin = 0; bin < bins; bin++) {
+                            scratch[bin] += counts[bin];
+                        }
+                    }
+                }
+                if (registers != null && registersHead == headBucket) {
+                    System.arraycopy(windowRegisters[window], 0, registers, 0, registerCount);
+                } else if (registers != null) {
+                    // the head moved since the window registers were merged, so merge the buckets of this read
+                    Arrays.fill(registers, (byte) 0);
+                    long head = headBucket;
+                    for (long bucket = head - windowSizes[window] + 1; bucket <= head; bucket++) {
+                        int index = indexOf(bucket);
+                        if (bucketHasRegisters.get(index) != 0) {
+                            bucketRegisters.maxInto(registers, index * registerCount);
+                        }
+                    }
+                }
+                if (locked || lock.validate(stamp)) {
+                    break;
+                }
+                stamp = lock.readLock();
+                locked = true;
+            }
+        } finally {
+            if (locked) {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (snapshotCount > 0) {
+            target.merge(snapshotSumHigh, snapshotSumLow, snapshotCount, snapshotMin, snapshotMax);
+            if (scratch != null) {
+                target.mergeHistogram(scratch);
+            }
+            if (registers != null) {
+                target.mergeRegisters(registers, 0);
+            }
+        }
+    }
+
+    /**
+     * Merges the buckets of the stripe that are part of a snapshot into it. Only this stripe is locked while it is
+     * copied, and writers move on to other stripes in the meantime.
+     *
+     * @param target the snapshot
+     */
+    void copyInto(StatisticsSnapshot target) {
+        long stamp = lock.readLock();
+        try {
+            for (int index = 0; index < size; index++) {
+                long bucket = bucketIds.get(index);
+                if (bucketCounts.get(index) == 0 || !target.contains(bucket)) {
+                    continue;
+                }
+                int node = leafOffset + index;
+                target.mergeBucket(bucket, bucketSumHighs.get(index), bucketSumLows.get(index),
+                        bucketCounts.get(index), treeMins.get(node), treeMaxs.get(node));
+                if (bins > 0) {
+                    for (int bin = bucketLowBins.get(index); bin <= bucketHighBins.get(index); bin++) {
+                        int binCount = bucketBins.get(index * bins + bin);
+                        if (binCount != 0) {
+                            target.addBin(bucket, bin, binCount);
+                        }
+                    }
+                }
+                if (registerCount > 0 && bucketHasRegisters.get(index) != 0) {
+                    for (int register = 0; register < registerCount; register++) {
+                        target.mergeRegister(bucket, register, bucketRegisters.get(index * registerCount + register));
+                    }
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Merges the buckets of a snapshot that are still in the window into the stripe.
+     *
+     * @param source    the snapshot, with the bins and registers of this stripe
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions restored
+     */
+    long restore(StatisticsSnapshot source, long nowBucket) {
+        long stamp = lock.writeLock();
+        try {
+            advance(nowBucket);
+            long restored = merge(source);
+            version++;
+            return restored;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Clears the stripe and merges the buckets of snapshots that are in the window into it, under one write lock, so
+     * that a reader sees either the previous buckets or the merged ones.
+     *
+     * @param sources   the snapshots, with the bins and registers of this stripe
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of transactions merged
+     */
+    long replace(List<StatisticsSnapshot> sources, long nowBucket) {
+        long stamp = lock.writeLock();
+        try {
+            headBucket = Long.MIN_VALUE;
+            registersHead = Long.MIN_VALUE;
+            advance(nowBucket);
+            long merged = 0;
+            for (StatisticsSnapshot source : sources) {
+                merged += merge(source);
+            }
+            version++;
+            return merged;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private long merge(StatisticsSnapshot source) {
+        long restored = 0;
+        for (int group = 0; group < source.groupCount(); group++) {
+            long bucket = source.bucket(group);
+            long count = source.count(group);
+            if (count == 0 || !mergeBucket(bucket, source.sumHigh(group), source.sumLow(group), count,
+                    source.min(group), source.max(group))) {
+                continue;
+            }
+            restored += count;
+            if (bins > 0) {
+                for (int bin = source.lowBin(group); bin <= source.highBin(group); bin++) {
+                    long binCount = source.binCount(group, bin);
+                    if (binCount != 0) {
+                        addToBin(bucket, bin, binCount);
+                    }
+                }
+            }
+            for (int register = 0; register < registerCount; register++) {
+                byte rank = source.register(group, register);
+                if (rank > 0) {
+                    addToRegister(bucket, register << 8 | rank);
+                }
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Rolls the window forward to a time bucket, removing the buckets that fall out of it from the aggregate.
+     *
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     */
+    void expire(long nowBucket) {
+        long stamp = lock.writeLock();
+        try {
+            advance(nowBucket);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void recordExpiryLatency(LatencyHistogram expiryLatency) {
+        this.expiryLatency = expiryLatency;
+    }
+
+    /**
+     * @param nowBucket the current time bucket, which is the newest bucket of the window
+     * @return the number of buckets of the window that hold transactions
+     */
+    int liveBuckets(long nowBucket) {
+        long stamp = lock.readLock();
+        try {
+            int live = 0;
+            for (int index = 0; index < size; index++) {
+                long bucket = bucketIds.get(index);
+                if (bucket <= nowBucket && bucket > nowBucket - size && bucketCounts.get(index) > 0) {
+                    live++;
+                }
+            }
+            return live;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private void advance(long nowBucket) {
+        if (nowBucket <= headBucket) {
+            return;
+        }
+        // at most once per bucket and stripe, so timing it costs nothing on the write path
+        long start = expiryLatency == null ? 0 : System.nanoTime();
+        if (headBucket == Long.MIN_VALUE || nowBucket - headBucket >= size) {
+            for (int index = 0; index < size; index++) {
+                if (bucketCounts.get(index) > 0) {
+                    clear(index);
+                }
+            }
+            Arrays.fill(bandSumHighs, 0);
+            Arrays.fill(bandSumLows, 0);
+            Arrays.fill(bandCounts, 0);
+            for (long[] counts : bandBins) {
+                Arrays.fill(counts, 0);
+            }
+        } else {
+            // bands in ascending order, so a bucket aging past several windows at once moves through all their bands
+            for (int band = 0; band < windowSizes.length; band++) {
+                long last = Math.min(nowBucket - windowSizes[band], headBucket);
+                for (long bucket = headBucket - windowSizes[band] + 1; bucket <= last; bucket++) {
+                    int index = indexOf(bucket);
+                    if (bucketIds.get(index) == bucket && bucketCounts.get(index) > 0) {
+                        age(index, band);
+                    }
+                }
+            }
+        }
+        headBucket = nowBucket;
+        if (expiryLatency != null) {
+            expiryLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Moves a bucket that aged past a window to the next band, or out of the aggregate after the longest window.
+     */
+    private void age(int index, int band) {
+        long sumHigh = bucketSumHighs.get(index);
+        long sumLow = bucketSumLows.get(index);
+        long count = bucketCounts.get(index);
+        addToBand(band, -sumHigh - (sumLow != 0 ? 1 : 0), -sumLow, -count);
+        if (band + 1 < windowSizes.length) {
+            addToBand(band + 1, sumHigh, sumLow, count);
+        }
+        if (bins > 0) {
+            for (int bin = bucketLowBins.get(index); bin <= bucketHighBins.get(index); bin++) {
+                int binCount = bucketBins.get(index * bins + bin);
+                if (binCount != 0) {
+                    bandBins[band][bin] -= binCount;
+                    if (band + 1 < windowSizes.length) {
+                        bandBins[band + 1][bin] += binCount;
+                    }
+                }
+            }
+        }
+        if (band + 1 == windowSizes.length) {
+            clear(index);
+        }
+    }
+
+    private void addToBand(int band, long addSumHigh, long addSumLow, long addCount) {
+        long low = bandSumLows[band] + addSumLow;
+        bandSumHighs[band] += addSumHigh + (Long.compareUnsigned(low, bandSumLows[band]) < 0 ? 1 : 0);
+        bandSumLows[band] = low;
+        bandCounts[band] += addCount;
+    }
+
+    private void clear(int index) {
+        bucketIds.set(index, Long.MIN_VALUE);
+        bucketSumHighs.set(index, 0);
+        bucketSumLows.set(index, 0);
+        bucketCounts.set(index, 0);
+        int node = leafOffset + index;
+        treeMins.set(node, Long.MAX_VALUE);
+        treeMaxs.set(node, Long.MIN_VALUE);
+        propagate(node);
+        if (bins > 0 && bucketHighBins.get(index) >= 0) {
+            bucketBins.fill(index * bins + bucketLowBins.get(index), index * bins + bucketHighBins.get(index) + 1, 0);
+            bucketLowBins.set(index, Integer.MAX_VALUE);
+            bucketHighBins.set(index, -1);
+        }
+        if (registerCount > 0 && bucketHasRegisters.get(index) != 0) {
+            bucketRegisters.fill(index * registerCount, (index + 1) * registerCount, (byte) 0);
+            bucketHasRegisters.set(index, (byte) 0);
+        }
+    }
+
+    private long rangeMin(int from, int to) {
+        long min = Long.MAX_VALUE;
+        for (int left = leafOffset + from, right = leafOffset + to + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                min = Math.min(min, treeMins.get(left++));
+            }
+            if ((right & 1) == 1) {
+                min = Math.min(min, treeMins.get(--right));
+            }
+        }
+        return min;
+    }
+
+    private long rangeMax(int from, int to) {
+        long max = Long.MIN_VALUE;
+        for (int left = leafOffset + from, right = leafOffset + to + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                max = Math.max(max, treeMaxs.get(left++));
+            }
+            if ((right & 1) == 1) {
+                max = Math.max(max, treeMaxs.get(--right));
+            }
+        }
+        return max;
+    }
+
+    private void propagate(int node) {
+        for (int parent = node >> 1; parent > 0; parent >>= 1) {
+            int left = parent << 1;
+            treeMins.set(parent, Math.min(treeMins.get(left), treeMins.get(left + 1)));
+            treeMaxs.set(parent, Math.max(treeMaxs.get(left), treeMaxs.get(left + 1)));
+        }
+    }
+
+    private int indexOf(long bucket) {
+        return (int) Math.floorMod(bucket, (long) size);
+    }
+}
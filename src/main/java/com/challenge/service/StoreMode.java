@@ -0,0 +1,41 @@
+package com.challenge.service;
+
+import java.util.Locale;
+
+/**
+ * Where the {@link StatisticsBucketStore} keeps its per-bucket columns.
+ */
+public enum StoreMode {
+
+    /**
+     * Java arrays on the heap.
+     */
+    HEAP,
+
+    /**
+     * Direct {@link java.nio.ByteBuffer}s outside of the heap, so that the heap does not grow with the window and the
+     * garbage collector never scans or copies the buckets.
+     */
+    DIRECT;
+
+    /**
+     * @param mode the mode name, ignoring case
+     * @return the mode
+     * @throws IllegalArgumentException if there is no mode of the name
+     */
+    public static StoreMode of(String mode) {
+        return valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    LongColumn longColumn(int length) {
+        return this == DIRECT ? new LongColumn.Direct(length) : new LongColumn.Heap(length);
+    }
+
+    IntColumn intColumn(int length) {
+        return this == DIRECT ? new IntColumn.Direct(length) : new IntColumn.Heap(length);
+    }
+
+    ByteColumn byteColumn(int length) {
+        return this == DIRECT ? new ByteColumn.Direct(length) : new ByteColumn.Heap(length);
+    }
+}
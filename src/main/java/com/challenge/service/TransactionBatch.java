@@ -0,0 +1,376 @@
+package com.challenge.service;
+
+import com.challenge.domain.AmountScale;
+import com.challenge.domain.HyperLogLog;
+import com.challenge.domain.LogHistogram;
+import com.challenge.domain.TimeWindow;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Accumulates a batch of transactions grouped by time bucket, so that each bucket is merged into the bucket store
+ * once per batch instead of once per transaction. Only the buckets the transactions fall into get a group, found through
+ * a small open-addressing table, so the memory and the merge of a batch grow with the buckets it touches rather than
+ * with the buckets of the window, which can be many at fine resolutions. Transactions with a key are also
+ * kept individually for the statistics per key, and the histogram bin and the payer of every transaction are kept with
+ * its group if percentiles and distinct payers are enabled. If the {@link TransactionLog} is enabled, the accepted
+ * transactions are also encoded as log records, so that the whole batch is appended to the log at once.
+ * <p>
+ * Instances are created by {@link StatisticsService#newBatch()}, are not thread-safe and must not be reused after
+ * {@link StatisticsService#addTransactions(TransactionBatch)}.
+ */
+public class TransactionBatch {
+
+    private static final int INITIAL_GROUPS = 8;
+
+    private final AmountScale amountScale;
+    private final TimeWindow window;
+    private final LogHistogram histogram;
+    private final HyperLogLog distinct;
+    private final long nowMillis;
+
+    private long[] groupBuckets = new long[INITIAL_GROUPS];
+    private long[] counts = new long[INITIAL_GROUPS];
+    private long[] sumHighs = new long[INITIAL_GROUPS];
+    private long[] sumLows = new long[INITIAL_GROUPS];
+    private long[] mins = new long[INITIAL_GROUPS];
+    private long[] maxs = new long[INITIAL_GROUPS];
+    private int groupCount;
+    private long count;
+
+    /**
+     * The group of a bucket plus one at the slot of the bucket hash, 0 for a free slot; at most half full.
+     */
+    private int[] groupSlots = new int[INITIAL_GROUPS * 2];
+
+    private int[] binCellGroups = new int[0];
+    private int[] binCellBins = new int[0];
+    private int binCellCount;
+
+    private int[] payerGroups = new int[0];
+    private int[] payerCells = new int[0];
+    private int payerCount;
+
+    private long lastUnits;
+    private long lastTimestamp;
+    private int lastGroup;
+
+    private ByteBuffer logRecords;
+    private int logRecordCount;
+    private int lastLogRecord;
+
+    private long[] keys = new long[0];
+    private long[] keyedUnits = new long[0];
+    private long[] keyedTimestamps = new long[0];
+    private int keyedSize;
+
+    private int size;
+    private long expired;
+    private long invalid;
+
+    TransactionBatch(AmountScale amountScale, TimeWindow window, LogHistogram histogram, HyperLogLog distinct,
+                     boolean logged, long nowMillis) {
+        this.amountScale = amountScale;
+        this.window = window;
+        this.histogram = histogram;
+        this.distinct = distinct;
+        this.nowMillis = nowMillis;
+        this.logRecords = logged ? ByteBuffer.allocate(64 * TransactionLog.MAX_RECORD_BYTES) : null;
+    }
+
+    /**
+     * Adds a transaction that passed validation to the group of its time bucket.
+     *
+     * @param amount    the transaction amount
+     * @param timestamp the transaction time in epoch milliseconds
+     */
+    public void add(double amount, long timestamp) {
+        long units;
+        try {
+            units = amountScale.toUnits(amount);
+        } catch (ArithmeticException e) {
+            reject();
+            return;
+        }
+        addUnits(units, timestamp);
+    }
+
+    /**
+     * Adds a transaction that passed validation and whose amount is already converted to minor units.
+     *
+     * @param units     the transaction amount in minor units of the configured scale
+     * @param timestamp the transaction time in epoch milliseconds
+     * @return true if the transaction is in the window, so that a key and a payer can be attached to it with
+     * {@link #attachKey(long)} and {@link #attachPayer(long)}
+     */
+    public boolean addUnits(long units, long timestamp) {
+        return addToGroup(units, timestamp);
+    }
+
+    /**
+     * Attaches a key to the transaction added last, for the statistics per key.
+     *
+     * @param key the key of the transaction, e.g. a merchant or account id
+     */
+    public void attachKey(long key) {
+        if (logRecords != null) {
+            attachToLogRecord(TransactionLog.KEY, key);
+        }
+        if (keyedSize == keys.length) {
+            int capacity = Math.max(16, keyedSize * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            keyedUnits = Arrays.copyOf(keyedUnits, capacity);
+            keyedTimestamps = Arrays.copyOf(keyedTimestamps, capacity);
+        }
+        keys[keyedSize] = key;
+        keyedUnits[keyedSize] = lastUnits;
+        keyedTimestamps[keyedSize] = lastTimestamp;
+        keyedSize++;
+    }
+
+    /**
+     * Attaches a payer to the transaction added last, for the distinct payer count.
+     *
+     * @param payerId the id of the payer
+     */
+    public void attachPayer(long payerId) {
+        if (logRecords != null) {
+            attachToLogRecord(TransactionLog.PAYER, payerId);
+        }
+        if (distinct == null) {
+            return;
+        }
+        if (payerCount == payerGroups.length) {
+            int capacity = Math.max(16, payerCount * 2);
+            payerGroups = Arrays.copyOf(payerGroups, capacity);
+            payerCells = Arrays.copyOf(payerCells, capacity);
+        }
+        payerGroups[payerCount] = lastGroup;
+        payerCells[payerCount] = distinct.cellOf(payerId);
+        payerCount++;
+    }
+
+    private boolean addToGroup(long units, long timestamp) {
+        size++;
+        if (!window.contains(nowMillis, timestamp)) {
+            expired++;
+            return false;
+        }
+        int group = groupOf(window.bucketOf(timestamp));
+        lastUnits = units;
+        lastTimestamp = timestamp;
+        lastGroup = group;
+        long low = sumLows[group] + units;
+        sumHighs[group] += (units >> 63) + (Long.compareUnsigned(low, sumLows[group]) < 0 ? 1 : 0);
+        sumLows[group] = low;
+        counts[group]++;
+        count++;
+        if (units < mins[group]) {
+            mins[group] = units;
+        }
+        if (units > maxs[group]) {
+            maxs[group] = units;
+        }
+        if (logRecords != null) {
+            if (logRecords.remaining() < TransactionLog.MAX_RECORD_BYTES) {
+                logRecords.flip();
+                logRecords = ByteBuffer.allocate(logRecords.capacity() * 2).put(logRecords);
+            }
+            lastLogRecord = logRecords.position();
+            logRecords.put((byte) 0).putLong(timestamp).putLong(units);
+            logRecordCount++;
+        }
+        if (histogram != null) {
+            if (binCellCount == binCellGroups.length) {
+                int capacity = Math.max(16, binCellCount * 2);
+                binCellGroups = Arrays.copyOf(binCellGroups, capacity);
+                binCellBins = Arrays.copyOf(binCellBins, capacity);
+            }
+            binCellGroups[binCellCount] = group;
+            binCellBins[binCellCount] = histogram.binOf(units);
+            binCellCount++;
+        }
+        return true;
+    }
+
+    private int groupOf(long bucket) {
+        if (groupCount > 0 && groupBuckets[lastGroup] == bucket) {
+            return lastGroup;
+        }
+        int mask = groupSlots.length - 1;
+        for (int slot = hash(bucket) & mask; ; slot = (slot + 1) & mask) {
+            int group = groupSlots[slot] - 1;
+            if (group < 0) {
+                return newGroup(bucket, slot);
+            }
+            if (groupBuckets[group] == bucket) {
+                return group;
+            }
+        }
+    }
+
+    private int newGroup(long bucket, int slot) {
+        if (groupCount == groupBuckets.length) {
+            int capacity = groupCount * 2;
+            groupBuckets = Arrays.copyOf(groupBuckets, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sumHighs = Arrays.copyOf(sumHighs, capacity);
+            sumLows = Arrays.copyOf(sumLows, capacity);
+            mins = Arrays.copyOf(mins, capacity);
+            maxs = Arrays.copyOf(maxs, capacity);
+        }
+        int group = groupCount++;
+        groupBuckets[group] = bucket;
+        mins[group] = Long.MAX_VALUE;
+        maxs[group] = Long.MIN_VALUE;
+        if (groupCount * 2 > groupSlots.length) {
+            groupSlots = new int[groupSlots.length * 2];
+            int mask = groupSlots.length - 1;
+            for (int rehashed = 0; rehashed < groupCount; rehashed++) {
+                int free = hash(groupBuckets[rehashed]) & mask;
+                while (groupSlots[free] != 0) {
+                    free = (free + 1) & mask;
+                }
+                groupSlots[free] = rehashed + 1;
+            }
+        } else {
+            groupSlots[slot] = group + 1;
+        }
+        return group;
+    }
+
+    private static int hash(long bucket) {
+        return (int) (bucket * 0x9E3779B97F4A7C15L >>> 32);
+    }
+
+    /**
+     * Appends a key or payer id field to the log record added last, keeping the key before the payer id.
+     */
+    private void attachToLogRecord(int flag, long value) {
+        int flags = logRecords.get(lastLogRecord);
+        if (flag == TransactionLog.KEY && (flags & TransactionLog.PAYER) != 0) {
+            long payerId = logRecords.getLong(logRecords.position() - Long.BYTES);
+            logRecords.position(logRecords.position() - Long.BYTES);
+            logRecords.putLong(value).putLong(payerId);
+        } else {
+            logRecords.putLong(value);
+        }
+        logRecords.put(lastLogRecord, (byte) (flags | flag));
+    }
+
+    /**
+     * Counts a transaction that failed validation.
+     */
+    public void reject() {
+        size++;
+        invalid++;
+    }
+
+    /**
+     * @return the number of transactions added to or rejected by the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    long getNowMillis() {
+        return nowMillis;
+    }
+
+    long getExpired() {
+        return expired;
+    }
+
+    long getInvalid() {
+        return invalid;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    int groupCount() {
+        return groupCount;
+    }
+
+    long bucket(int group) {
+        return groupBuckets[group];
+    }
+
+    long count(int group) {
+        return counts[group];
+    }
+
+    long sumHigh(int group) {
+        return sumHighs[group];
+    }
+
+    long sumLow(int group) {
+        return sumLows[group];
+    }
+
+    long min(int group) {
+        return mins[group];
+    }
+
+    long max(int group) {
+        return maxs[group];
+    }
+
+    int binCellCount() {
+        return binCellCount;
+    }
+
+    int binCellGroup(int cell) {
+        return binCellGroups[cell];
+    }
+
+    int binCellBin(int cell) {
+        return binCellBins[cell];
+    }
+
+    int payerCount() {
+        return payerCount;
+    }
+
+    int payerGroup(int payer) {
+        return payerGroups[payer];
+    }
+
+    int payerCell(int payer) {
+        return payerCells[payer];
+    }
+
+    int logRecordCount() {
+        return logRecordCount;
+    }
+
+    /**
+     * @return the encoded log records, from the position to the limit; null if the log is disabled
+     */
+    ByteBuffer logRecords() {
+        if (logRecords == null) {
+            return null;
+        }
+        ByteBuffer records = logRecords.duplicate();
+        records.flip();
+        return records;
+    }
+
+    int keyedSize() {
+        return keyedSize;
+    }
+
+    long key(int keyed) {
+        return keys[keyed];
+    }
+
+    long keyedUnits(int keyed) {
+        return keyedUnits[keyed];
+    }
+
+    long keyedTimestamp(int keyed) {
+        return keyedTimestamps[keyed];
+    }
+}
@@ -0,0 +1,549 @@
+package com.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of the accepted transactions, disabled unless {@code transaction.log.directory} is set.
+ * <p>
+ * Request threads encode their records into a shared pending buffer and a single writer thread writes everything that
+ * accumulated since its last write as one frame, so that one write and one fsync commit the records of many requests.
+ * The {@link Sync} policy decides when frames are forced to disk and whether {@link #awaitDurable(long)} waits for it.
+ * <p>
+ * The log is a directory of segment files named by a sequence number. A frame is the length and CRC32 of its payload
+ * followed by the payload, a sequence of records of a flags byte, the timestamp in epoch milliseconds, the amount in
+ * minor units and, if flagged, the key and the payer id, all big endian. A new segment is started on every start and
+ * whenever the current one exceeds its size or age limit, and segments whose newest transaction is older than the
+ * retention are deleted.
+ */
+@Component
+public class TransactionLog implements Closeable {
+
+    /**
+     * When frames are forced to disk.
+     */
+    public enum Sync {
+
+        /**
+         * After every frame; {@link #awaitDurable(long)} waits until the records are on disk.
+         */
+        ALWAYS,
+
+        /**
+         * At most one interval after a frame is written; records can be lost on a crash of the machine.
+         */
+        INTERVAL,
+
+        /**
+         * Whenever the operating system writes its page cache back; records can be lost on a crash of the machine.
+         */
+        NEVER;
+
+        /**
+         * @param sync the policy name, ignoring case
+         * @return the policy
+         * @throws IllegalArgumentException if there is no policy of the name
+         */
+        public static Sync of(String sync) {
+            return valueOf(sync.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Receives the records of the log on replay.
+     */
+    public interface Replay {
+
+        /**
+         * @param units     the transaction amount in minor units
+         * @param timestamp the transaction time in epoch milliseconds
+         * @param key       the key of the transaction, if {@code hasKey}
+         * @param hasKey    true if the transaction has a key
+         * @param payerId   the payer of the transaction, if {@code hasPayer}
+         * @param hasPayer  true if the transaction has a payer
+         */
+        void accept(long units, long timestamp, long key, boolean hasKey, long payerId, boolean hasPayer);
+    }
+
+    static final int KEY = 1;
+    static final int PAYER = 2;
+    static final int MAX_RECORD_BYTES = 1 + 4 * Long.BYTES;
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionLog.class);
+    private static final String SEGMENT_PREFIX = "transactions-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final long HOUSEKEEPING_MILLIS = 1000;
+
+    private final Path directory;
+    private final Sync sync;
+    private final long syncIntervalMillis;
+    private final long segmentBytes;
+    private final int maxPendingBytes;
+    private final long pendingTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingRecords = lock.newCondition();
+    private final Condition durableRecords = lock.newCondition();
+    private final Condition pendingSpace = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private boolean closed;
+
+    private final List<Path> replaySegments = new ArrayList<>();
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private volatile long retentionMillis = Long.MAX_VALUE;
+    private final Thread writer;
+
+    // owned by the writer thread
+    private FileChannel channel;
+    private long segmentId;
+    private long segmentStartMillis;
+    private long written;
+    private long writtenSequence;
+    private long lastSyncMillis;
+    private long lastHousekeepingMillis;
+
+    /**
+     * Opens the log in a directory, starting a new segment after the segments of the previous run.
+     *
+     * @param directory            the log directory, created if missing; empty to disable the log
+     * @param sync                 when frames are forced to disk: {@code always}, {@code interval} or {@code never}
+     * @param syncIntervalMillis   the maximum time between a frame and its fsync with the {@code interval} policy
+     * @param segmentBytes         the size after which a new segment is started
+     * @param maxPendingBytes      the size of the records waiting for the writer above which appends wait
+     * @param pendingTimeoutMillis how long an append waits for the writer to take the records before it fails
+     * @throws IOException if the directory or the new segment cannot be created
+     */
+    @Autowired
+    public TransactionLog(@Value("${transaction.log.directory:}") String directory,
+                          @Value("${transaction.log.fsync:always}") String sync,
+                          @Value("${transaction.log.fsync.interval:100}") long syncIntervalMillis,
+                          @Value("${transaction.log.segment.size:67108864}") long segmentBytes,
+                          @Value("${transaction.log.pending.size:16777216}") int maxPendingBytes,
+                          @Value("${transaction.log.pending.timeout:1000}") long pendingTimeoutMillis)
+            throws IOException {
+        this.directory = directory.trim().isEmpty() ? null : Paths.get(directory.trim());
+        this.sync = Sync.of(sync);
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.segmentBytes = segmentBytes;
+        this.maxPendingBytes = maxPendingBytes;
+        this.pendingTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(pendingTimeoutMillis, 0));
+        if (this.directory == null) {
+            this.writer = null;
+            return;
+        }
+        if (syncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive: " + syncIntervalMillis);
+        }
+        if (maxPendingBytes < MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Pending size must hold a record: " + maxPendingBytes);
+        }
+        Files.createDirectories(this.directory);
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(this.directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                String name = segment.getFileName().toString();
+                ids.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(ids);
+        for (long id : ids) {
+            Path segment = segmentPath(id);
+            replaySegments.add(segment);
+            closedSegments.add(new Segment(segment, Files.getLastModifiedTime(segment).toMillis()));
+        }
+        segmentId = ids.isEmpty() ? 0 : ids.get(ids.size() - 1);
+        openSegment(System.currentTimeMillis());
+        this.writer = new Thread(this::write, "transaction-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return true if the log is enabled
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * @return true if {@link #awaitDurable(long)} waits for the records to be forced to disk
+     */
+    public boolean isStrict() {
+        return sync == Sync.ALWAYS;
+    }
+
+    /**
+     * @return true if {@link #append(long, long, Long, Long)} waits for the writer once the pending records are full
+     */
+    public boolean isWaitingForSpace() {
+        return pendingTimeoutNanos > 0;
+    }
+
+    /**
+     * Sets how long segments are kept after their newest transaction, which is the longest statistics interval.
+     *
+     * @param retentionMillis the retention in milliseconds
+     */
+    public void setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Appends a transaction to the log.
+     *
+     * @param units     the transaction amount in minor units
+     * @param timestamp the transaction time in epoch milliseconds
+     * @param key       the key of the transaction, or null
+     * @param payerId   the payer of the transaction, or null
+     * @return the sequence number of the record, see {@link #awaitDurable(long)}
+     * @throws IOException if the log failed or is closed, or if the writer did not take the pending records in time
+     */
+    public long append(long units, long timestamp, Long key, Long payerId) throws IOException {
+        lock.lock();
+        try {
+            ensureWritable(MAX_RECORD_BYTES);
+            pending.put((byte) ((key != null ? KEY : 0) | (payerId != null ? PAYER : 0)))
+                    .putLong(timestamp)
+                    .putLong(units);
+            if (key != null) {
+                pending.putLong(key);
+            }
+            if (payerId != null) {
+                pending.putLong(payerId);
+            }
+            pendingRecords.signal();
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the encoded records of a batch to the log.
+     *
+     * @param records the records, from the position to the limit
+     * @param count   the number of records
+     * @return the sequence number of the last record, see {@link #awaitDurable(long)}
+     * @throws IOException if the log failed or is closed, or if the writer did not take the pending records in time
+     */
+    long append(ByteBuffer records, int count) throws IOException {
+        lock.lock();
+        try {
+            ensureWritable(records.remaining());
+            pending.put(records);
+            pendingRecords.signal();
+            appended += count;
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a record and every record before it are forced to disk; returns immediately unless the policy is
+     * {@link Sync#ALWAYS}.
+     *
+     * @param sequence the sequence number of the record
+     * @throws IOException if the log failed or was closed before the record was forced to disk
+     */
+    public void awaitDurable(long sequence) throws IOException {
+        if (sync != Sync.ALWAYS) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durable < sequence) {
+                if (failure != null) {
+                    throw new IOException("Transaction log failed", failure);
+                }
+                if (closed) {
+                    throw new IOException("Transaction log is closed");
+                }
+                durableRecords.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the transaction log");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the segments of the previous run. A frame that is truncated or fails its checksum ends its segment, as it
+     * was being written when the previous run stopped.
+     *
+     * @param replay receives the records in log order
+     * @return the number of records read
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(Replay replay) throws IOException {
+        long records = 0;
+        for (Path segment : replaySegments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                records += replay(buffer, segment, replay);
+            } catch (NoSuchFileException e) {
+                // deleted by the retention in the meantime, so all of its transactions expired
+            }
+        }
+        return records;
+    }
+
+    private static long replay(ByteBuffer buffer, Path segment, Replay replay) {
+        long records = 0;
+        CRC32 checksum = new CRC32();
+        while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                LOG.warn("Ignoring truncated frame at {} of {}", buffer.position() - FRAME_HEADER_BYTES, segment);
+                break;
+            }
+            ByteBuffer payload = buffer.slice();
+            payload.limit(length);
+            checksum.reset();
+            checksum.update(payload.duplicate());
+            if ((int) checksum.getValue() != expected) {
+                LOG.warn("Ignoring corrupt frame at {} of {}", buffer.position() - FRAME_HEADER_BYTES, segment);
+                break;
+            }
+            while (payload.hasRemaining()) {
+                int flags = payload.get();
+                long timestamp = payload.getLong();
+                long units = payload.getLong();
+                boolean hasKey = (flags & KEY) != 0;
+                boolean hasPayer = (flags & PAYER) != 0;
+                long key = hasKey ? payload.getLong() : 0;
+                long payerId = hasPayer ? payload.getLong() : 0;
+                replay.accept(units, timestamp, key, hasKey, payerId, hasPayer);
+                records++;
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return records;
+    }
+
+    /**
+     * Writes the pending records, forces them to disk and stops the writer thread.
+     *
+     * @throws IOException if the log failed
+     */
+    @Override
+    @PreDestroy
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            pendingRecords.signal();
+            pendingSpace.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the transaction log");
+        }
+        if (failure != null) {
+            throw new IOException("Transaction log failed", failure);
+        }
+    }
+
+    /**
+     * Waits while the records waiting for the writer would exceed the maximum pending size, so that a writer stuck in
+     * a slow {@code force} holds the appends back instead of growing the buffer until the heap is exhausted. A batch
+     * larger than the maximum is taken into an empty buffer.
+     */
+    private void ensureWritable(int bytes) throws IOException {
+        long remainingNanos = pendingTimeoutNanos;
+        while (true) {
+            if (failure != null) {
+                throw new IOException("Transaction log failed", failure);
+            }
+            if (closed || writer == null) {
+                throw new IOException("Transaction log is closed");
+            }
+            if (pending.position() == 0 || pending.position() + bytes <= maxPendingBytes) {
+                break;
+            }
+            if (remainingNanos <= 0) {
+                throw new IOException("Transaction log is full, " + pending.position() + " bytes wait for the disk");
+            }
+            try {
+                remainingNanos = pendingSpace.awaitNanos(remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the transaction log");
+            }
+        }
+        if (pending.remaining() < bytes) {
+            pending.flip();
+            pending = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.limit() + bytes)).put(pending);
+        }
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                long sequence;
+                boolean stop;
+                lock.lock();
+                try {
+                    if (pending.position() == 0 && !closed) {
+                        pendingRecords.await(Math.min(syncIntervalMillis, HOUSEKEEPING_MILLIS), TimeUnit.MILLISECONDS);
+                    }
+                    ByteBuffer swap = writing;
+                    writing = pending;
+                    pending = swap;
+                    sequence = appended;
+                    stop = closed;
+                    pendingSpace.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                long now = System.currentTimeMillis();
+                writing.flip();
+                if (writing.hasRemaining()) {
+                    writeFrame(writing);
+                }
+                writing.clear();
+                writtenSequence = sequence;
+                if (stop || sync == Sync.ALWAYS
+                        || sync == Sync.INTERVAL && now - lastSyncMillis >= syncIntervalMillis) {
+                    force(now);
+                }
+                if (stop) {
+                    channel.close();
+                    return;
+                }
+                if (written >= segmentBytes
+                        || written > 0 && now - segmentStartMillis >= Math.max(retentionMillis / 2, 1000)) {
+                    rollSegment(now);
+                }
+                if (now - lastHousekeepingMillis >= HOUSEKEEPING_MILLIS) {
+                    deleteExpiredSegments(now);
+                    lastHousekeepingMillis = now;
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            LOG.error("Transaction log failed", e);
+            lock.lock();
+            try {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                durableRecords.signalAll();
+                pendingSpace.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                channel.close();
+            } catch (IOException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+        }
+    }
+
+    private void writeFrame(ByteBuffer payload) throws IOException {
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_BYTES)
+                .putInt(payload.remaining())
+                .putInt((int) checksum.getValue());
+        header.flip();
+        ByteBuffer[] frame = {header, payload};
+        while (header.hasRemaining() || payload.hasRemaining()) {
+            written += channel.write(frame);
+        }
+    }
+
+    private void force(long now) throws IOException {
+        if (writtenSequence == durable) {
+            return;
+        }
+        channel.force(false);
+        lastSyncMillis = now;
+        lock.lock();
+        try {
+            durable = writtenSequence;
+            durableRecords.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rollSegment(long now) throws IOException {
+        force(now);
+        channel.close();
+        closedSegments.add(new Segment(segmentPath(segmentId), now));
+        openSegment(now);
+    }
+
+    private void openSegment(long now) throws IOException {
+        segmentId++;
+        channel = FileChannel.open(segmentPath(segmentId), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentStartMillis = now;
+        written = 0;
+    }
+
+    private void deleteExpiredSegments(long now) throws IOException {
+        while (!closedSegments.isEmpty() && closedSegments.peekFirst().lastWriteMillis < now - retentionMillis) {
+            Files.deleteIfExists(closedSegments.pollFirst().path);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private final long lastWriteMillis;
+
+        Segment(Path path, long lastWriteMillis) {
+            this.path = path;
+            this.lastWriteMillis = lastWriteMillis;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.challenge.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi-producer, single-consumer ring of validated transactions between the request threads and a single
+ * writer thread, disabled unless {@code transaction.queue.capacity} is set.
+ * <p>
+ * Request threads claim a slot by a compare-and-set of the tail, write the transaction into the primitive columns of
+ * the slot and publish it by an ordered write of the slot sequence, so an offer neither locks nor allocates. The writer
+ * drains the published slots in order into batches of up to {@value #DRAIN_SIZE} transactions, so each time bucket of
+ * a batch is merged into the store once by a single thread instead of every request contending for the stripes. The
+ * {@link Full} policy decides what an offer to a full ring does.
+ */
+@Component
+public class TransactionQueue implements Closeable {
+
+    /**
+     * What an offer to a full queue does.
+     */
+    public enum Full {
+
+        /**
+         * Fails, so that the request is answered with 503.
+         */
+        REJECT,
+
+        /**
+         * Waits until the writer made room.
+         */
+        BLOCK,
+
+        /**
+         * Fails, while the request is answered as if the transaction was added.
+         */
+        DROP;
+
+        /**
+         * @param full the policy name, ignoring case
+         * @return the policy
+         * @throws IllegalArgumentException if there is no policy of the name
+         */
+        public static Full of(String full) {
+            return valueOf(full.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    static final int DRAIN_SIZE = 8192;
+
+    /**
+     * Flags a slot that was claimed after the queue was closed and is skipped by the writer.
+     */
+    private static final int CANCELLED = 4;
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionQueue.class);
+    private static final long IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final int capacity;
+    private final int mask;
+    private final Full full;
+
+    private final AtomicLongArray sequences;
+    private final long[] units;
+    private final long[] timestamps;
+    private final long[] keys;
+    private final long[] payerIds;
+    private final byte[] flags;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final LongAdder failed = new LongAdder();
+    private volatile boolean closed;
+    private Thread writer;
+
+    // owned by the writer thread
+    private long head;
+
+    /**
+     * @param capacity the number of transactions the queue holds, rounded up to a power of two; 0 to disable it
+     * @param full     what an offer to a full queue does: {@code reject}, {@code block} or {@code drop}
+     */
+    @Autowired
+    public TransactionQueue(@Value("${transaction.queue.capacity:0}") int capacity,
+                            @Value("${transaction.queue.full:reject}") String full) {
+        if (capacity < 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Queue capacity must be between 0 and 2^30: " + capacity);
+        }
+        this.capacity = capacity == 0 ? 0 : 1 << 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        this.mask = this.capacity - 1;
+        this.full = Full.of(full);
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.units = new long[this.capacity];
+        this.timestamps = new long[this.capacity];
+        this.keys = new long[this.capacity];
+        this.payerIds = new long[this.capacity];
+        this.flags = new byte[this.capacity];
+        for (int slot = 0; slot < this.capacity; slot++) {
+            sequences.set(slot, slot);
+        }
+    }
+
+    /**
+     * @return true if the queue is enabled
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return what an offer to a full queue does
+     */
+    public Full getFull() {
+        return full;
+    }
+
+    /**
+     * @return the number of transactions the queue holds
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of transactions waiting for the writer
+     */
+    public long getDepth() {
+        return Math.max(0, tail.get() - drained.get());
+    }
+
+    /**
+     * @return the number of drained transactions that were lost as the sink failed to add their batch
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Starts the writer thread, which drains the queue into batches and hands them on.
+     *
+     * @param batches creates an empty batch for the current time
+     * @param sink    adds a batch to the statistics; if it throws, the transactions of the batch are logged and counted
+     *                as {@link #getFailed() failed}, as the writer cannot tell which of them were added
+     */
+    public synchronized void start(Supplier<TransactionBatch> batches, Consumer<TransactionBatch> sink) {
+        if (!isEnabled() || writer != null) {
+            return;
+        }
+        writer = new Thread(() -> write(batches, sink), "transaction-queue-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Offers a transaction that passed validation to the writer.
+     *
+     * @param units     the transaction amount in minor units
+     * @param timestamp the transaction time in epoch milliseconds
+     * @param key       the key of the transaction or null
+     * @param payerId   the payer of the transaction or null
+     * @return false if the queue is full and its policy is not {@link Full#BLOCK}, or if it is closed
+     */
+    public boolean offer(long units, long timestamp, Long key, Long payerId) {
+        if (closed) {
+            return false;
+        }
+        long sequence;
+        while (true) {
+            sequence = tail.get();
+            long published = sequences.get(slot(sequence));
+            if (published == sequence) {
+                if (tail.compareAndSet(sequence, sequence + 1)) {
+                    break;
+                }
+            } else if (published < sequence) {
+                if (full != Full.BLOCK || closed) {
+                    return false;
+                }
+                LockSupport.parkNanos(BLOCK_NANOS);
+            }
+        }
+        int slot = slot(sequence);
+        if (closed) {
+            // the writer may have seen the queue empty and stopped before the slot was claimed
+            flags[slot] = CANCELLED;
+            sequences.lazySet(slot, sequence + 1);
+            return false;
+        }
+        this.units[slot] = units;
+        this.timestamps[slot] = timestamp;
+        this.keys[slot] = key == null ? 0 : key;
+        this.payerIds[slot] = payerId == null ? 0 : payerId;
+        this.flags[slot] = (byte) ((key != null ? TransactionLog.KEY : 0)
+                | (payerId != null ? TransactionLog.PAYER : 0));
+        sequences.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Moves the published transactions at the head of the queue into a batch. Must only be called by one thread.
+     *
+     * @param batch the batch
+     * @param max   the maximum number of transactions to move
+     * @return the number of transactions moved
+     */
+    int drain(TransactionBatch batch, int max) {
+        int count = 0;
+        while (count < max) {
+            int slot = slot(head);
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            if ((flags[slot] & CANCELLED) == 0 && batch.addUnits(units[slot], timestamps[slot])) {
+                if ((flags[slot] & TransactionLog.KEY) != 0) {
+                    batch.attachKey(keys[slot]);
+                }
+                if ((flags[slot] & TransactionLog.PAYER) != 0) {
+                    batch.attachPayer(payerIds[slot]);
+                }
+            }
+            sequences.lazySet(slot, head + capacity);
+            head++;
+            count++;
+        }
+        if (count > 0) {
+            drained.lazySet(head);
+        }
+        return count;
+    }
+
+    private void write(Supplier<TransactionBatch> batches, Consumer<TransactionBatch> sink) {
+        while (true) {
+            // a slot can be claimed and not published yet, so the depth alone would make the writer spin
+            if (sequences.get(slot(head)) != head + 1) {
+                if (closed && getDepth() == 0) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            TransactionBatch batch = batches.get();
+            if (drain(batch, DRAIN_SIZE) > 0) {
+                try {
+                    sink.accept(batch);
+                } catch (RuntimeException e) {
+                    failed.add(batch.getCount());
+                    LOG.error("Could not add {} queued transactions", batch.getCount(), e);
+                }
+            }
+        }
+    }
+
+    private int slot(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    /**
+     * Stops taking transactions and waits until the writer added the queued ones.
+     */
+    @Override
+    @PreDestroy
+    public void close() {
+        closed = true;
+        Thread writer;
+        synchronized (this) {
+            writer = this.writer;
+        }
+        if (writer == null) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
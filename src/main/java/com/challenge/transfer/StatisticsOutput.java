@@ -1,11 +1,21 @@
 package com.challenge.transfer;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Collections;
+import java.util.Map;
+
 public class StatisticsOutput {
     private double sum;
     private double avg;
     private double max;
     private double min;
     private long count;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long distinctCount;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Double> percentiles;
+    private boolean frozen;
 
     public StatisticsOutput() {
     }
@@ -23,6 +33,7 @@ public class StatisticsOutput {
     }
 
     public void setSum(double sum) {
+        checkNotFrozen();
         this.sum = sum;
     }
 
@@ -31,6 +42,7 @@ public class StatisticsOutput {
     }
 
     public void setAvg(double avg) {
+        checkNotFrozen();
         this.avg = avg;
     }
 
@@ -39,6 +51,7 @@ public class StatisticsOutput {
     }
 
     public void setMax(double max) {
+        checkNotFrozen();
         this.max = max;
     }
 
@@ -47,6 +60,7 @@ public class StatisticsOutput {
     }
 
     public void setMin(double min) {
+        checkNotFrozen();
         this.min = min;
     }
 
@@ -55,9 +69,47 @@ public class StatisticsOutput {
     }
 
     public void setCount(long count) {
+        checkNotFrozen();
         this.count = count;
     }
 
+    public Long getDistinctCount() {
+        return distinctCount;
+    }
+
+    public void setDistinctCount(Long distinctCount) {
+        checkNotFrozen();
+        this.distinctCount = distinctCount;
+    }
+
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    public void setPercentiles(Map<String, Double> percentiles) {
+        checkNotFrozen();
+        this.percentiles = percentiles;
+    }
+
+    /**
+     * Makes the statistics read-only, so that an instance can be shared between callers.
+     *
+     * @return this
+     */
+    public StatisticsOutput freeze() {
+        if (percentiles != null) {
+            percentiles = Collections.unmodifiableMap(percentiles);
+        }
+        frozen = true;
+        return this;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Statistics are shared and read-only");
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -69,7 +121,10 @@ public class StatisticsOutput {
         if (Double.compare(that.avg, avg) != 0) return false;
         if (Double.compare(that.max, max) != 0) return false;
         if (Double.compare(that.min, min) != 0) return false;
-        return count == that.count;
+        if (count != that.count) return false;
+        if (distinctCount != null ? !distinctCount.equals(that.distinctCount) : that.distinctCount != null)
+            return false;
+        return percentiles != null ? percentiles.equals(that.percentiles) : that.percentiles == null;
 
     }
 
@@ -86,6 +141,8 @@ public class StatisticsOutput {
         temp = Double.doubleToLongBits(min);
         result = 31 * result + (int) (temp ^ (temp >>> 32));
         result = 31 * result + (int) (count ^ (count >>> 32));
+        result = 31 * result + (distinctCount != null ? distinctCount.hashCode() : 0);
+        result = 31 * result + (percentiles != null ? percentiles.hashCode() : 0);
         return result;
     }
 
@@ -97,6 +154,8 @@ public class StatisticsOutput {
                 ", max=" + max +
                 ", min=" + min +
                 ", count=" + count +
+                ", distinctCount=" + distinctCount +
+                ", percentiles=" + percentiles +
                 '}';
     }
 }
@@ -0,0 +1,69 @@
+package com.challenge.transfer;
+
+public class TransactionBatchOutput {
+    private long accepted;
+    private long expired;
+    private long invalid;
+
+    public TransactionBatchOutput() {
+    }
+
+    public TransactionBatchOutput(long accepted, long expired, long invalid) {
+        this.accepted = accepted;
+        this.expired = expired;
+        this.invalid = invalid;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(long accepted) {
+        this.accepted = accepted;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public void setExpired(long expired) {
+        this.expired = expired;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public void setInvalid(long invalid) {
+        this.invalid = invalid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TransactionBatchOutput that = (TransactionBatchOutput) o;
+
+        if (accepted != that.accepted) return false;
+        if (expired != that.expired) return false;
+        return invalid == that.invalid;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (accepted ^ (accepted >>> 32));
+        result = 31 * result + (int) (expired ^ (expired >>> 32));
+        result = 31 * result + (int) (invalid ^ (invalid >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionBatchOutput{" +
+                "accepted=" + accepted +
+                ", expired=" + expired +
+                ", invalid=" + invalid +
+                '}';
+    }
+}
@@ -3,6 +3,8 @@ package com.challenge.transfer;
 public class TransactionInput {
     private double amount;
     private long timestamp;
+    private Long key;
+    private Long payerId;
 
     public TransactionInput() {
     }
@@ -12,6 +14,12 @@ public class TransactionInput {
         this.timestamp = timestamp;
     }
 
+    public TransactionInput(double amount, long timestamp, Long key) {
+        this.amount = amount;
+        this.timestamp = timestamp;
+        this.key = key;
+    }
+
     public double getAmount() {
         return amount;
     }
@@ -27,4 +35,20 @@ public class TransactionInput {
     public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
+
+    public Long getKey() {
+        return key;
+    }
+
+    public void setKey(Long key) {
+        this.key = key;
+    }
+
+    public Long getPayerId() {
+        return payerId;
+    }
+
+    public void setPayerId(Long payerId) {
+        this.payerId = payerId;
+    }
 }
@@ -0,0 +1,48 @@
+package com.challenge.web;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Stops reading a connection of the {@link NettyIngestServer} while too many of its frames wait for their ack or
+ * while its acks are not being read, counting the frames passed on against the acks written back. Runs on the event
+ * loop of the connection, so the count needs no synchronization.
+ */
+class FrameFlowControl extends ChannelDuplexHandler {
+
+    private final int maxPendingFrames;
+
+    private int pendingFrames;
+
+    FrameFlowControl(int maxPendingFrames) {
+        this.maxPendingFrames = maxPendingFrames;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        pendingFrames++;
+        ctx.fireChannelRead(msg);
+        updateAutoRead(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        pendingFrames--;
+        ctx.write(msg, promise);
+        updateAutoRead(ctx);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        updateAutoRead(ctx);
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    private void updateAutoRead(ChannelHandlerContext ctx) {
+        boolean autoRead = pendingFrames < maxPendingFrames && ctx.channel().isWritable();
+        if (ctx.channel().config().isAutoRead() != autoRead) {
+            ctx.channel().config().setAutoRead(autoRead);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.challenge.web;
+
+import com.challenge.service.LatencyHistogram;
+import com.challenge.service.StatisticsMetrics;
+import com.challenge.service.StatisticsMetrics.Outcome;
+import com.challenge.service.StatisticsService;
+import com.challenge.service.TransactionQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Locale;
+
+/**
+ * Exposes the {@link StatisticsMetrics} and a few gauges in the Prometheus text format. The values are read from the
+ * counters when scraped, so the recording side never does more than an increment.
+ */
+@Controller
+public class MetricsController {
+
+    public static final String PROMETHEUS_TEXT_VALUE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    @Autowired
+    private StatisticsBroadcaster statisticsBroadcaster;
+
+    @Autowired
+    private TransactionQueue transactionQueue;
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = PROMETHEUS_TEXT_VALUE)
+    @ResponseBody
+    public String getMetrics() {
+        StatisticsMetrics metrics = statisticsService.getMetrics();
+        StringBuilder out = new StringBuilder(8192);
+
+        type(out, "transactions_total", "counter", "Transactions by outcome.");
+        for (Outcome outcome : Outcome.values()) {
+            out.append("transactions_total{outcome=\"").append(outcome.name().toLowerCase(Locale.ROOT))
+                    .append("\"} ").append(metrics.getCount(outcome)).append('\n');
+        }
+        histogram(out, "add_transaction_duration_seconds", "Latency of adding a single transaction.",
+                metrics.getAddTransactionLatency());
+        histogram(out, "add_transactions_duration_seconds", "Latency of adding a batch of transactions.",
+                metrics.getAddTransactionsLatency());
+        histogram(out, "get_statistics_duration_seconds", "Latency of reading the statistics.",
+                metrics.getGetStatisticsLatency());
+        histogram(out, "statistics_expiry_duration_seconds",
+                "Time a stripe spent removing expired buckets when moving to a new bucket.",
+                metrics.getExpiryLatency());
+        gauge(out, "statistics_live_buckets", "Buckets of the longest interval holding transactions.",
+                statisticsService.getLiveBucketCount());
+        gauge(out, "statistics_keys", "Keys statistics are kept for.", statisticsService.getKeyCount());
+        gauge(out, "transaction_queue_depth", "Transactions waiting in the queue for the writer thread.",
+                transactionQueue.getDepth());
+        gauge(out, "statistics_stream_subscribers", "Subscribers of the statistics stream.",
+                statisticsBroadcaster.getSubscriberCount());
+        type(out, "statistics_stream_dropped_total", "counter",
+                "Stream events skipped as the previous event of the subscriber was still being sent.");
+        out.append("statistics_stream_dropped_total ").append(statisticsBroadcaster.getDroppedCount()).append('\n');
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        type(out, name, "histogram", help);
+        long cumulative = 0;
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            cumulative += histogram.getCount(bucket);
+            long bound = histogram.getUpperBoundNanos(bucket);
+            out.append(name).append("_bucket{le=\"")
+                    .append(bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / NANOS_PER_SECOND))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.getSumNanos() / NANOS_PER_SECOND).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        type(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void type(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
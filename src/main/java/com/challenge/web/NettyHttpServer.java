@@ -0,0 +1,127 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetSocketAddress;
+
+/**
+ * Non-blocking HTTP server for the transaction and statistics endpoints on a few Netty event loop threads, next to the
+ * servlet container and feeding the same {@link StatisticsService}. Disabled unless {@code netty.server.port} is set.
+ * <p>
+ * Requests are handled on the event loop, as adding a transaction and reading the cached statistics never wait for
+ * I/O. Only if adding can wait, for the fsync or the full buffer of the write-ahead log or for the writer of a blocking
+ * transaction queue, are they handed to a separate group of threads, so that the event loops keep serving the other
+ * connections.
+ */
+@Component
+public class NettyHttpServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyHttpServer.class);
+
+    private final NettyRequestHandler handler;
+    private final int port;
+    private final int threads;
+    private final int maxContentLength;
+    private final boolean blocking;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventExecutorGroup blockingGroup;
+    private Channel channel;
+
+    /**
+     * @param statisticsService       the statistics
+     * @param objectMapper            the JSON mapper
+     * @param transactionStreamReader the reader of batch bodies
+     * @param statisticsResponseCache the serialized statistics
+     * @param port                    the port; 0 for any free port, negative to disable the server
+     * @param threads                 the number of event loop threads; 0 for twice the available processors
+     * @param maxContentLength        the maximum request body size in bytes
+     */
+    @Autowired
+    public NettyHttpServer(StatisticsService statisticsService, ObjectMapper objectMapper,
+                           TransactionStreamReader transactionStreamReader,
+                           StatisticsResponseCache statisticsResponseCache,
+                           @Value("${netty.server.port:-1}") int port,
+                           @Value("${netty.server.threads:0}") int threads,
+                           @Value("${netty.server.max-content-length:16777216}") int maxContentLength) {
+        this.handler = new NettyRequestHandler(statisticsService, objectMapper, transactionStreamReader,
+                statisticsResponseCache);
+        this.port = port;
+        this.threads = threads;
+        this.maxContentLength = maxContentLength;
+        this.blocking = statisticsService.isBlockingOnAdd();
+    }
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        if (port < 0) {
+            return;
+        }
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("netty-boss", true));
+        workerGroup = new NioEventLoopGroup(threads, new DefaultThreadFactory("netty-worker", true));
+        if (blocking) {
+            blockingGroup = new DefaultEventExecutorGroup(Math.max(16, Runtime.getRuntime().availableProcessors() * 4),
+                    new DefaultThreadFactory("netty-blocking", true));
+        }
+        channel = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(maxContentLength))
+                                .addLast(blockingGroup, "handler", handler);
+                    }
+                })
+                .bind(port)
+                .sync()
+                .channel();
+        LOG.info("Netty HTTP server started on port {}", getPort());
+    }
+
+    /**
+     * @return the port the server listens on, or -1 if it is disabled
+     */
+    public int getPort() {
+        return channel == null ? -1 : ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (channel == null) {
+            return;
+        }
+        channel.close().syncUninterruptibly();
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+        if (blockingGroup != null) {
+            blockingGroup.shutdownGracefully();
+        }
+    }
+}
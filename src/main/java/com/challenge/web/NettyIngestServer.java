@@ -0,0 +1,142 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsService;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetSocketAddress;
+
+/**
+ * Binary TCP listener for bulk ingestion on a few Netty event loop threads, next to the HTTP API and feeding the same
+ * {@link StatisticsService}. Disabled unless {@code ingest.server.port} is set.
+ * <p>
+ * A client sends frames of a 4 byte length followed by that many bytes of transactions, each a big-endian IEEE 754
+ * double amount and a long timestamp in epoch milliseconds, i.e. {@value TransactionFrameHandler#TRANSACTION_BYTES}
+ * bytes per transaction. Every frame is answered in order by an ack of {@value TransactionFrameHandler#ACK_BYTES}
+ * bytes: an int status, {@value TransactionFrameHandler#OK} or {@value TransactionFrameHandler#FAILED} if the
+ * write-ahead log failed, and the longs accepted, expired and invalid. A frame that is too long or does not hold whole
+ * transactions closes the connection.
+ * <p>
+ * Frames are read from pooled buffers and the transactions decoded from them straight into a batch of the service,
+ * without an object per transaction. A connection stops being read while {@code ingest.server.max-pending-frames}
+ * of its frames are waiting for their ack or while its acks are not being read, so a fast client is slowed down by
+ * TCP flow control instead of filling the memory of the server. If adding can wait for the write-ahead log, the frames
+ * are handled by a separate group of threads instead of the event loops.
+ */
+@Component
+public class NettyIngestServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyIngestServer.class);
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final TransactionFrameHandler handler;
+    private final int port;
+    private final int threads;
+    private final int maxFrameLength;
+    private final int maxPendingFrames;
+    private final boolean blocking;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private EventExecutorGroup blockingGroup;
+    private Channel channel;
+
+    /**
+     * @param statisticsService the statistics
+     * @param port              the port; 0 for any free port, negative to disable the server
+     * @param threads           the number of event loop threads; 0 for twice the available processors
+     * @param maxFrameLength    the maximum frame size in bytes, excluding the length
+     * @param maxPendingFrames  the number of frames of a connection that may wait for their ack before it stops being
+     *                          read
+     */
+    @Autowired
+    public NettyIngestServer(StatisticsService statisticsService,
+                             @Value("${ingest.server.port:-1}") int port,
+                             @Value("${ingest.server.threads:0}") int threads,
+                             @Value("${ingest.server.max-frame-length:1048576}") int maxFrameLength,
+                             @Value("${ingest.server.max-pending-frames:16}") int maxPendingFrames) {
+        if (maxPendingFrames <= 0) {
+            throw new IllegalArgumentException("Maximum pending frames must be positive: " + maxPendingFrames);
+        }
+        this.handler = new TransactionFrameHandler(statisticsService);
+        this.port = port;
+        this.threads = threads;
+        this.maxFrameLength = maxFrameLength;
+        this.maxPendingFrames = maxPendingFrames;
+        this.blocking = statisticsService.isBlockingOnAdd();
+    }
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        if (port < 0) {
+            return;
+        }
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("ingest-boss", true));
+        workerGroup = new NioEventLoopGroup(threads, new DefaultThreadFactory("ingest-worker", true));
+        if (blocking) {
+            blockingGroup = new DefaultEventExecutorGroup(Math.max(16, Runtime.getRuntime().availableProcessors() * 4),
+                    new DefaultThreadFactory("ingest-blocking", true));
+        }
+        channel = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(32 * 1024, 64 * 1024))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        channel.pipeline()
+                                .addLast(new FlushConsolidationHandler())
+                                .addLast(new LengthFieldBasedFrameDecoder(maxFrameLength, 0, LENGTH_BYTES, 0,
+                                        LENGTH_BYTES))
+                                .addLast(new FrameFlowControl(maxPendingFrames))
+                                .addLast(blockingGroup, "handler", handler);
+                    }
+                })
+                .bind(port)
+                .sync()
+                .channel();
+        LOG.info("Ingest server started on port {}", getPort());
+    }
+
+    /**
+     * @return the port the server listens on, or -1 if it is disabled
+     */
+    public int getPort() {
+        return channel == null ? -1 : ((InetSocketAddress) channel.localAddress()).getPort();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (channel == null) {
+            return;
+        }
+        channel.close().syncUninterruptibly();
+        bossGroup.shutdownGracefully();
+        workerGroup.shutdownGracefully();
+        if (blockingGroup != null) {
+            blockingGroup.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsMetrics.Outcome;
+import com.challenge.service.StatisticsService;
+import com.challenge.transfer.TransactionInput;
+import com.challenge.web.StatisticsResponseCache.SerializedStatistics;
+import com.challenge.web.validation.TransactionValidator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Serves the transaction and statistics endpoints of the controllers on the {@link NettyHttpServer}, with the same
+ * status codes. The statistics stream is only served by the servlet container.
+ */
+@ChannelHandler.Sharable
+class NettyRequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    private static final String TRANSACTIONS = "/transactions";
+    private static final String TRANSACTIONS_BATCH = "/transactions/batch";
+    private static final String STATISTICS = "/statistics";
+    private static final String STATISTICS_PARTIALS = "/statistics/partials";
+    private static final String STATISTICS_CLUSTER = "/statistics/cluster";
+    private static final String WINDOW = "window";
+
+    private final StatisticsService statisticsService;
+    private final ObjectMapper objectMapper;
+    private final TransactionStreamReader transactionStreamReader;
+    private final StatisticsResponseCache statisticsResponseCache;
+
+    NettyRequestHandler(StatisticsService statisticsService, ObjectMapper objectMapper,
+                        TransactionStreamReader transactionStreamReader,
+                        StatisticsResponseCache statisticsResponseCache) {
+        this.statisticsService = statisticsService;
+        this.objectMapper = objectMapper;
+        this.transactionStreamReader = transactionStreamReader;
+        this.statisticsResponseCache = statisticsResponseCache;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+        FullHttpResponse response;
+        try {
+            response = handle(request);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            response = empty(HttpResponseStatus.BAD_REQUEST);
+        } catch (IOException | UncheckedIOException e) {
+            response = empty(HttpResponseStatus.SERVICE_UNAVAILABLE);
+        }
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(response);
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+    }
+
+    private FullHttpResponse handle(FullHttpRequest request) throws IOException {
+        if (!request.decoderResult().isSuccess()) {
+            return empty(HttpResponseStatus.BAD_REQUEST);
+        }
+        QueryStringDecoder uri = new QueryStringDecoder(request.uri());
+        String path = uri.path();
+        HttpMethod method = request.method();
+        if (path.equals(TRANSACTIONS)) {
+            if (!method.equals(HttpMethod.POST)) {
+                return empty(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            TransactionInput input;
+            try (InputStream body = new ByteBufInputStream(request.content())) {
+                input = objectMapper.readValue(body, TransactionInput.class);
+            }
+            if (!TransactionValidator.isValid(input.getAmount(), input.getTimestamp())) {
+                statisticsService.getMetrics().count(Outcome.INVALID);
+                return empty(HttpResponseStatus.BAD_REQUEST);
+            }
+            return empty(HttpResponseStatus.valueOf(statisticsService.addTransaction(input).getStatusCodeValue()));
+        }
+        if (path.equals(TRANSACTIONS_BATCH)) {
+            if (!method.equals(HttpMethod.POST)) {
+                return empty(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            try (InputStream body = new ByteBufInputStream(request.content())) {
+                return json(objectMapper.writeValueAsBytes(transactionStreamReader.read(body)));
+            }
+        }
+        if (path.equals(STATISTICS)) {
+            if (!method.equals(HttpMethod.GET)) {
+                return empty(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            List<String> window = uri.parameters().get(WINDOW);
+            if (window != null) {
+                return json(objectMapper.writeValueAsBytes(statisticsService.getStatistics(window.get(0))));
+            }
+            SerializedStatistics serialized = statisticsResponseCache.get();
+            FullHttpResponse response = serialized.matches(request.headers().get(HttpHeaderNames.IF_NONE_MATCH))
+                    ? empty(HttpResponseStatus.NOT_MODIFIED)
+                    : json(serialized.getJson());
+            response.headers().set(HttpHeaderNames.ETAG, serialized.getEtag());
+            return response;
+        }
+        if (path.equals(STATISTICS_PARTIALS) || path.equals(STATISTICS_CLUSTER)) {
+            if (!method.equals(HttpMethod.GET)) {
+                return empty(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            if (path.equals(STATISTICS_CLUSTER)) {
+                return json(objectMapper.writeValueAsBytes(statisticsService.getClusterStatistics()));
+            }
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                    Unpooled.wrappedBuffer(statisticsService.getPartials()));
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_OCTET_STREAM);
+            return response;
+        }
+        if (path.startsWith(STATISTICS + "/")) {
+            if (!method.equals(HttpMethod.GET)) {
+                return empty(HttpResponseStatus.METHOD_NOT_ALLOWED);
+            }
+            long key = Long.parseLong(path.substring(STATISTICS.length() + 1));
+            return json(objectMapper.writeValueAsBytes(statisticsService.getStatistics(key)));
+        }
+        return empty(HttpResponseStatus.NOT_FOUND);
+    }
+
+    private static FullHttpResponse empty(HttpResponseStatus status) {
+        return new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status);
+    }
+
+    private static FullHttpResponse json(byte[] json) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+                Unpooled.wrappedBuffer(json));
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON + "; charset=UTF-8");
+        return response;
+    }
+}
@@ -0,0 +1,138 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsService;
+import com.challenge.transfer.StatisticsOutput;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams the statistics to Server-Sent Events subscribers.
+ * <p>
+ * Every tick reads the statistics once, serializes them if they changed since the last tick and hands the same JSON to
+ * every subscriber, so the cost of the statistics does not depend on the number of subscribers. Events are sent by a
+ * small pool of sender threads; a subscriber whose previous event is still being sent skips the tick, so a slow client
+ * only misses updates and never delays the others.
+ */
+@Component
+public class StatisticsBroadcaster {
+
+    private final StatisticsService statisticsService;
+    private final ObjectMapper objectMapper;
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final ExecutorService senders;
+    private final LongAdder dropped = new LongAdder();
+
+    // owned by the scheduler thread
+    private StatisticsOutput lastStatistics;
+    private String lastJson;
+
+    @Autowired
+    public StatisticsBroadcaster(StatisticsService statisticsService, ObjectMapper objectMapper) {
+        this.statisticsService = statisticsService;
+        this.objectMapper = objectMapper;
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "statistics-stream-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Subscribes a client to the statistics, which are sent from the next tick on until the client disconnects.
+     *
+     * @return the emitter of the subscription, not null
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Scheduled method that sends the current statistics to every subscriber that is ready for them.
+     *
+     * @throws JsonProcessingException if the statistics cannot be serialized
+     */
+    @Scheduled(fixedRateString = "${statistics.stream.interval:100}")
+    public void broadcast() throws JsonProcessingException {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        StatisticsOutput current = statisticsService.getStatistics();
+        if (current != lastStatistics) {
+            lastJson = objectMapper.writeValueAsString(current);
+            lastStatistics = current;
+        }
+        String statistics = lastJson;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.sending.compareAndSet(false, true)) {
+                senders.execute(() -> subscriber.send(statistics));
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the number of subscribers
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return the number of events skipped because the previous event of the subscriber was still being sent
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void send(String statistics) {
+            try {
+                emitter.send(SseEmitter.event().data(statistics, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // the client went away
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            } finally {
+                sending.set(false);
+            }
+        }
+    }
+}
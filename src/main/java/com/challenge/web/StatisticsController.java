@@ -2,11 +2,18 @@ package com.challenge.web;
 
 import com.challenge.service.StatisticsService;
 import com.challenge.transfer.StatisticsOutput;
+import com.challenge.web.StatisticsResponseCache.SerializedStatistics;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestMethod;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
 
 @Controller
 public class StatisticsController {
@@ -14,9 +21,65 @@ public class StatisticsController {
     @Autowired
     private StatisticsService statisticsService;
 
-    @RequestMapping(value = "/statistics", method = RequestMethod.GET)
+    @Autowired
+    private StatisticsBroadcaster statisticsBroadcaster;
+
+    @Autowired
+    private StatisticsResponseCache statisticsResponseCache;
+
+    /**
+     * Serves the statistics of the default window from the {@link StatisticsResponseCache}, with an ETag of the JSON.
+     */
+    @RequestMapping(value = "/statistics", method = RequestMethod.GET, params = "!window")
+    public ResponseEntity<byte[]> getStatistics(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws JsonProcessingException {
+        SerializedStatistics serialized = statisticsResponseCache.get();
+        if (serialized.matches(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(serialized.getEtag()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .eTag(serialized.getEtag())
+                .body(serialized.getJson());
+    }
+
+    @RequestMapping(value = "/statistics", method = RequestMethod.GET, params = "window")
+    @ResponseBody
+    public StatisticsOutput getStatisticsForWindow(@RequestParam("window") String window) {
+        return statisticsService.getStatistics(window);
+    }
+
+    @RequestMapping(value = "/statistics/stream", method = RequestMethod.GET,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatistics() {
+        return statisticsBroadcaster.subscribe();
+    }
+
+    /**
+     * Serves the buckets of the statistics intervals of this node for the other nodes of the cluster.
+     */
+    @RequestMapping(value = "/statistics/partials", method = RequestMethod.GET,
+            produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @ResponseBody
+    public byte[] getPartials() throws IOException {
+        return statisticsService.getPartials();
+    }
+
+    @RequestMapping(value = "/statistics/cluster", method = RequestMethod.GET)
     @ResponseBody
-    public StatisticsOutput getStatistics() {
-        return statisticsService.getStatistics();
+    public StatisticsOutput getClusterStatistics() {
+        return statisticsService.getClusterStatistics();
+    }
+
+    @RequestMapping(value = "/statistics/{key}", method = RequestMethod.GET)
+    @ResponseBody
+    public StatisticsOutput getStatistics(@PathVariable("key") long key) {
+        return statisticsService.getStatistics(key);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity handleUnknownWindow() {
+        return new ResponseEntity(HttpStatus.BAD_REQUEST);
     }
 }
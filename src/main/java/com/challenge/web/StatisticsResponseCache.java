@@ -0,0 +1,77 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsService;
+import com.challenge.transfer.StatisticsOutput;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.zip.CRC32;
+
+/**
+ * The JSON of the statistics of the default window with its ETag, serialized again only when
+ * {@link StatisticsService#getStatistics()} computed new statistics, shared by the HTTP servers.
+ */
+@Component
+public class StatisticsResponseCache {
+
+    private final StatisticsService statisticsService;
+    private final ObjectMapper objectMapper;
+
+    private volatile SerializedStatistics serializedStatistics;
+
+    @Autowired
+    public StatisticsResponseCache(StatisticsService statisticsService, ObjectMapper objectMapper) {
+        this.statisticsService = statisticsService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the serialized current statistics, not null
+     * @throws JsonProcessingException if the statistics cannot be serialized
+     */
+    public SerializedStatistics get() throws JsonProcessingException {
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        SerializedStatistics serialized = serializedStatistics;
+        if (serialized == null || serialized.statistics != statistics) {
+            serialized = new SerializedStatistics(statistics, objectMapper.writeValueAsBytes(statistics));
+            serializedStatistics = serialized;
+        }
+        return serialized;
+    }
+
+    public static final class SerializedStatistics {
+
+        private final StatisticsOutput statistics;
+        private final byte[] json;
+        private final String etag;
+
+        SerializedStatistics(StatisticsOutput statistics, byte[] json) {
+            this.statistics = statistics;
+            this.json = json;
+            CRC32 checksum = new CRC32();
+            checksum.update(json);
+            this.etag = "\"" + Long.toHexString(checksum.getValue()) + "-" + Integer.toHexString(json.length) + "\"";
+        }
+
+        /**
+         * @return the UTF-8 JSON, which must not be modified
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @param ifNoneMatch the {@code If-None-Match} header of a request, or null
+         * @return true if the header matches the ETag, so that the statistics are not modified for the client
+         */
+        public boolean matches(String ifNoneMatch) {
+            return ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"));
+        }
+    }
+}
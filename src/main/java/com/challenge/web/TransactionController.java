@@ -1,22 +1,37 @@
 package com.challenge.web;
 
+import com.challenge.service.StatisticsMetrics.Outcome;
 import com.challenge.service.StatisticsService;
+import com.challenge.transfer.TransactionBatchOutput;
 import com.challenge.transfer.TransactionInput;
 import com.challenge.web.validation.TransactionValidator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 @Controller
 public class TransactionController {
+
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     @Autowired
     private StatisticsService statisticsService;
 
-    @InitBinder
+    @Autowired
+    private TransactionStreamReader transactionStreamReader;
+
+    @InitBinder("transactionInput")
     protected void initBinder(WebDataBinder binder) {
         binder.setValidator(new TransactionValidator());
     }
@@ -26,4 +41,27 @@ public class TransactionController {
     public ResponseEntity addTransaction(@RequestBody @Valid TransactionInput request) {
         return statisticsService.addTransaction(request);
     }
+
+    @RequestMapping(value = "/transactions/batch", method = RequestMethod.POST,
+            consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    @ResponseBody
+    public TransactionBatchOutput addTransactions(InputStream request) throws IOException {
+        return transactionStreamReader.read(request);
+    }
+
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity handleInvalidTransaction() {
+        statisticsService.getMetrics().count(Outcome.INVALID);
+        return new ResponseEntity(HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(JsonProcessingException.class)
+    public ResponseEntity handleMalformedBatch() {
+        return new ResponseEntity(HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(UncheckedIOException.class)
+    public ResponseEntity handleTransactionLogFailure() {
+        return new ResponseEntity(HttpStatus.SERVICE_UNAVAILABLE);
+    }
 }
@@ -0,0 +1,92 @@
+package com.challenge.web;
+
+import com.challenge.service.StatisticsService;
+import com.challenge.service.TransactionBatch;
+import com.challenge.transfer.TransactionBatchOutput;
+import com.challenge.web.validation.TransactionValidator;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Adds the transactions of a frame of the {@link NettyIngestServer} and acks it. The transactions are handed to the
+ * {@link StatisticsService} every {@value TransactionStreamReader#FLUSH_SIZE} transactions, in order, so the counts of
+ * a {@link #FAILED} ack are those of the leading transactions of the frame that were added before the write-ahead log
+ * failed.
+ */
+@ChannelHandler.Sharable
+class TransactionFrameHandler extends ChannelInboundHandlerAdapter {
+
+    static final int TRANSACTION_BYTES = Double.BYTES + Long.BYTES;
+    static final int ACK_BYTES = Integer.BYTES + 3 * Long.BYTES;
+    static final int OK = 0;
+    static final int FAILED = 1;
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionFrameHandler.class);
+
+    private final StatisticsService statisticsService;
+
+    TransactionFrameHandler(StatisticsService statisticsService) {
+        this.statisticsService = statisticsService;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ByteBuf frame = (ByteBuf) msg;
+        try {
+            if (frame.readableBytes() % TRANSACTION_BYTES != 0) {
+                LOG.debug("Closing {}: frame of {} bytes", ctx.channel(), frame.readableBytes());
+                ctx.close();
+                return;
+            }
+            read(ctx, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void read(ChannelHandlerContext ctx, ByteBuf frame) {
+        long accepted = 0;
+        long expired = 0;
+        long invalid = 0;
+        int status = OK;
+        try {
+            TransactionBatch batch = statisticsService.newBatch();
+            for (int index = frame.readerIndex(); index < frame.writerIndex(); index += TRANSACTION_BYTES) {
+                double amount = frame.getDouble(index);
+                long timestamp = frame.getLong(index + Double.BYTES);
+                if (TransactionValidator.isValid(amount, timestamp)) {
+                    batch.add(amount, timestamp);
+                } else {
+                    batch.reject();
+                }
+                if (batch.size() >= TransactionStreamReader.FLUSH_SIZE) {
+                    TransactionBatchOutput output = statisticsService.addTransactions(batch);
+                    accepted += output.getAccepted();
+                    expired += output.getExpired();
+                    invalid += output.getInvalid();
+                    batch = statisticsService.newBatch();
+                }
+            }
+            TransactionBatchOutput output = statisticsService.addTransactions(batch);
+            accepted += output.getAccepted();
+            expired += output.getExpired();
+            invalid += output.getInvalid();
+        } catch (UncheckedIOException e) {
+            status = FAILED;
+        }
+        ctx.writeAndFlush(ctx.alloc().buffer(ACK_BYTES)
+                .writeInt(status).writeLong(accepted).writeLong(expired).writeLong(invalid));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        LOG.debug("Closing {}: {}", ctx.channel(), cause.toString());
+        ctx.close();
+    }
+}
@@ -0,0 +1,185 @@
+package com.challenge.web;
+
+import com.challenge.domain.AmountScale;
+import com.challenge.service.StatisticsService;
+import com.challenge.service.TransactionBatch;
+import com.challenge.transfer.TransactionBatchOutput;
+import com.challenge.web.validation.TransactionValidator;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads transactions from a JSON array or a stream of JSON objects, e.g. NDJSON, with the Jackson token stream and
+ * feeds the amounts and timestamps straight into {@link TransactionBatch}es without binding {@code TransactionInput}s.
+ * <p>
+ * The batch is handed to the {@link StatisticsService} every {@value #FLUSH_SIZE} transactions, so memory use does not
+ * grow with the size of the body and long uploads are validated against a current time. Transactions flushed before a
+ * malformed part of the body stay added.
+ */
+@Component
+public class TransactionStreamReader {
+
+    static final int FLUSH_SIZE = 8192;
+
+    private static final String AMOUNT = "amount";
+    private static final String TIMESTAMP = "timestamp";
+    private static final String KEY = "key";
+    private static final String PAYER_ID = "payerId";
+
+    private final JsonFactory jsonFactory;
+    private final StatisticsService statisticsService;
+
+    @Autowired
+    public TransactionStreamReader(ObjectMapper objectMapper, StatisticsService statisticsService) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.statisticsService = statisticsService;
+    }
+
+    /**
+     * Reads all transactions of a stream.
+     *
+     * @param in the stream, not closed
+     * @return the number of accepted, expired and invalid transactions
+     * @throws IOException if the stream cannot be read or is not valid JSON
+     */
+    public TransactionBatchOutput read(InputStream in) throws IOException {
+        AmountScale amountScale = statisticsService.getAmountScale();
+        long accepted = 0;
+        long expired = 0;
+        long invalid = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            TransactionBatch batch = statisticsService.newBatch();
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected a transaction object but was " + token);
+                }
+                readTransaction(parser, batch, amountScale);
+                if (batch.size() >= FLUSH_SIZE) {
+                    TransactionBatchOutput output = statisticsService.addTransactions(batch);
+                    accepted += output.getAccepted();
+                    expired += output.getExpired();
+                    invalid += output.getInvalid();
+                    batch = statisticsService.newBatch();
+                }
+                token = parser.nextToken();
+            }
+            if (array && token == null) {
+                throw new JsonParseException(parser, "Unexpected end of the transaction array");
+            }
+            TransactionBatchOutput output = statisticsService.addTransactions(batch);
+            accepted += output.getAccepted();
+            expired += output.getExpired();
+            invalid += output.getInvalid();
+        }
+        return new TransactionBatchOutput(accepted, expired, invalid);
+    }
+
+    private void readTransaction(JsonParser parser, TransactionBatch batch, AmountScale amountScale)
+            throws IOException {
+        long amount = 0;
+        boolean positiveAmount = false;
+        long timestamp = 0;
+        long key = 0;
+        boolean keyed = false;
+        long payerId = 0;
+        boolean paid = false;
+        boolean valid = true;
+
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            token = parser.nextToken();
+            if (AMOUNT.equals(field)) {
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                        || token == JsonToken.VALUE_STRING) {
+                    try {
+                        amount = amountScale.parseUnits(parser.getTextCharacters(), parser.getTextOffset(),
+                                parser.getTextLength());
+                        positiveAmount = isPositive(parser.getTextCharacters(), parser.getTextOffset(),
+                                parser.getTextLength());
+                    } catch (NumberFormatException | ArithmeticException e) {
+                        valid = false;
+                    }
+                } else {
+                    valid = false;
+                    parser.skipChildren();
+                }
+            } else if (TIMESTAMP.equals(field)) {
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    timestamp = parser.getLongValue();
+                } else {
+                    valid = false;
+                    parser.skipChildren();
+                }
+            } else if (KEY.equals(field)) {
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    key = parser.getLongValue();
+                    keyed = true;
+                } else if (token != JsonToken.VALUE_NULL) {
+                    valid = false;
+                    parser.skipChildren();
+                }
+            } else if (PAYER_ID.equals(field)) {
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    payerId = parser.getLongValue();
+                    paid = true;
+                } else if (token != JsonToken.VALUE_NULL) {
+                    valid = false;
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "Unexpected end of a transaction object");
+        }
+
+        if (!valid || !positiveAmount || !TransactionValidator.isValidTimestamp(timestamp)) {
+            batch.reject();
+        } else if (batch.addUnits(amount, timestamp)) {
+            if (keyed) {
+                batch.attachKey(key);
+            }
+            if (paid) {
+                batch.attachPayer(payerId);
+            }
+        }
+    }
+
+    /**
+     * Applies the amount rule of {@link TransactionValidator} to the decimal text of an amount.
+     *
+     * @return true if the decimal text is not negative and has a non-zero digit before any exponent
+     */
+    private static boolean isPositive(char[] chars, int offset, int length) {
+        if (length > 0 && chars[offset] == '-') {
+            return false;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            char c = chars[i];
+            if (c == 'e' || c == 'E') {
+                return false;
+            }
+            if (c >= '1' && c <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package com.challenge.web;
+
+import org.apache.catalina.connector.Connector;
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.ConfigurableEmbeddedServletContainer;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves the requests of the servlet container on virtual threads, one per request, instead of Tomcat's pool of
+ * {@code server.tomcat.max-threads} platform threads. Disabled unless {@code spring.threads.virtual.enabled} is set,
+ * which requires JDK 21 or later; the virtual thread API is looked up reflectively as the application is built for
+ * Java 8.
+ * <p>
+ * The statistics and the write-ahead log only use {@code java.util.concurrent} locks, but Tomcat 8.5 processes every
+ * request inside a {@code synchronized} block on the socket in {@code SocketProcessorBase.run}, so a request that
+ * blocks, e.g. waiting for the fsync of the log, for a blocking transaction queue or for a slow request body, pins its
+ * carrier thread until it returns. At most as many requests as there are carriers can block at the same time, the
+ * number of processors unless {@code jdk.virtualThreadScheduler.parallelism} is set; raising
+ * {@code server.tomcat.max-connections} above that only lets more connections queue for the carriers instead of adding
+ * concurrency, as raising {@code server.tomcat.max-threads} would for the platform threads.
+ */
+@Component
+public class VirtualThreadsCustomizer implements EmbeddedServletContainerCustomizer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadsCustomizer.class);
+
+    private final boolean enabled;
+
+    private ExecutorService executor;
+
+    /**
+     * @param enabled true to serve requests on virtual threads
+     */
+    public VirtualThreadsCustomizer(@Value("${spring.threads.virtual.enabled:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void customize(ConfigurableEmbeddedServletContainer container) {
+        if (!enabled || !(container instanceof TomcatEmbeddedServletContainerFactory)) {
+            return;
+        }
+        executor = newVirtualThreadPerTaskExecutor("http-virtual-");
+        ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(this::customize);
+        LOG.info("Serving requests on virtual threads");
+    }
+
+    private void customize(Connector connector) {
+        ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @param prefix the prefix of the thread names, followed by a counter
+     * @return an executor that starts a new virtual thread for every task
+     * @throws IllegalStateException if the JDK has no virtual threads
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require JDK 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+}
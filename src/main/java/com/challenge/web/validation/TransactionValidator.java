@@ -18,12 +18,31 @@ public class TransactionValidator implements Validator {
     @Override
     public void validate(Object o, Errors errors) {
         TransactionInput input = (TransactionInput) o;
-        if (input.getAmount() <= 0) {
+        if (!isValidAmount(input.getAmount())) {
             errors.reject(AMOUNT, INVALID_VALUE);
         }
 
-        if (input.getTimestamp() <= 0) {
+        if (!isValidTimestamp(input.getTimestamp())) {
             errors.reject(TIMESTAMP, INVALID_VALUE);
         }
     }
+
+    /**
+     * Applies the validation rules to a transaction without binding it, for the bulk ingestion paths.
+     *
+     * @param amount    the transaction amount
+     * @param timestamp the transaction time in epoch milliseconds
+     * @return true if the transaction is valid
+     */
+    public static boolean isValid(double amount, long timestamp) {
+        return isValidAmount(amount) && isValidTimestamp(timestamp);
+    }
+
+    public static boolean isValidAmount(double amount) {
+        return amount > 0;
+    }
+
+    public static boolean isValidTimestamp(long timestamp) {
+        return timestamp > 0;
+    }
 }
@@ -0,0 +1,65 @@
+package com.challenge.domain;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AmountScaleTest {
+
+    private final AmountScale amountScale = new AmountScale(2);
+
+    @Test
+    public void testToUnits() {
+        assertThat(amountScale.toUnits(54.1), is(5410L));
+        assertThat(amountScale.toUnits(0.125), is(13L));
+        assertThat(amountScale.toUnits(3), is(300L));
+        assertThat(amountScale.toUnits(-2.5), is(-250L));
+    }
+
+    @Test
+    public void testToUnitsRoundsLikeParseUnits() {
+        for (String amount : new String[]{"1.005", "0.285", "-1.005", "0.125", "2.675", "1.015", "8.345", "1e-3",
+                "123456789.125", "1.00499"}) {
+            assertThat(amount, amountScale.toUnits(Double.parseDouble(amount)), is(parseUnits(amount)));
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testToUnitsOutOfRange() {
+        amountScale.toUnits(1e17);
+    }
+
+    @Test
+    public void testParseUnits() {
+        assertThat(parseUnits("54.10"), is(5410L));
+        assertThat(parseUnits("54.1"), is(5410L));
+        assertThat(parseUnits("54"), is(5400L));
+        assertThat(parseUnits("1.005"), is(101L));
+        assertThat(parseUnits("1.00499"), is(100L));
+        assertThat(parseUnits("-2.5"), is(-250L));
+        assertThat(parseUnits("5e2"), is(50000L));
+        assertThat(parseUnits("0.123456789012345678901"), is(12L));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testParseUnitsOutOfRange() {
+        parseUnits("100000000000000000");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseUnitsNotANumber() {
+        parseUnits("12a");
+    }
+
+    @Test
+    public void testToDecimal() {
+        assertThat(amountScale.toDecimal(5410), is(new BigDecimal("54.10")));
+    }
+
+    private long parseUnits(String text) {
+        return amountScale.parseUnits(text.toCharArray(), 0, text.length());
+    }
+}
@@ -0,0 +1,49 @@
+package com.challenge.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class HyperLogLogTest {
+
+    private final HyperLogLog hyperLogLog = new HyperLogLog(11);
+
+    @Test
+    public void testEstimate() {
+        for (int distinct : new int[]{0, 10, 1000, 100000}) {
+            byte[] registers = new byte[hyperLogLog.getRegisterCount()];
+            for (long id = 0; id < distinct; id++) {
+                add(registers, id);
+                add(registers, id);
+            }
+            assertThat((double) hyperLogLog.estimate(registers), closeTo(distinct, 1 + distinct * 0.07));
+        }
+    }
+
+    @Test
+    public void testMergeIsUnion() {
+        byte[] first = new byte[hyperLogLog.getRegisterCount()];
+        byte[] second = new byte[hyperLogLog.getRegisterCount()];
+        for (long id = 0; id < 3000; id++) {
+            add(id < 2000 ? first : second, id);
+            add(id >= 1000 ? second : first, id);
+        }
+        HyperLogLog.merge(first, second, 0);
+        assertThat((double) hyperLogLog.estimate(first), closeTo(3000, 3000 * 0.07));
+    }
+
+    @Test
+    public void testCell() {
+        int cell = hyperLogLog.cellOf(42);
+        assertThat(HyperLogLog.registerOf(cell) < hyperLogLog.getRegisterCount(), is(true));
+        assertThat(HyperLogLog.rankOf(cell) > 0, is(true));
+    }
+
+    private void add(byte[] registers, long id) {
+        int cell = hyperLogLog.cellOf(id);
+        int register = HyperLogLog.registerOf(cell);
+        registers[register] = (byte) Math.max(registers[register], HyperLogLog.rankOf(cell));
+    }
+}
@@ -0,0 +1,38 @@
+package com.challenge.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LogHistogramTest {
+
+    private final LogHistogram histogram = new LogHistogram(0.01);
+
+    @Test
+    public void testBinValueIsWithinRelativeAccuracy() {
+        for (long units : new long[]{1, 2, 99, 100, 12345, 1L << 40, Long.MAX_VALUE}) {
+            double value = histogram.valueOf(histogram.binOf(units));
+            assertThat(value, closeTo(units, units * 0.01));
+        }
+        assertThat(histogram.binOf(0), is(0));
+        assertThat(histogram.binOf(Long.MAX_VALUE), is(histogram.getBinCount() - 1));
+    }
+
+    @Test
+    public void testQuantile() {
+        long[] counts = new long[histogram.getBinCount()];
+        for (long units = 1; units <= 100; units++) {
+            counts[histogram.binOf(units)]++;
+        }
+        assertThat(histogram.quantile(counts, 100, 0), closeTo(1, 0.01));
+        assertThat(histogram.quantile(counts, 100, 0.5), closeTo(50, 0.5));
+        assertThat(histogram.quantile(counts, 100, 1), closeTo(100, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccuracyMustBeBelowOne() {
+        new LogHistogram(1);
+    }
+}
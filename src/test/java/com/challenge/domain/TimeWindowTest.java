@@ -0,0 +1,51 @@
+package com.challenge.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TimeWindowTest {
+
+    @Test
+    public void testBucketCount() {
+        assertThat(new TimeWindow(60000, 1000).getBucketCount(), is(61));
+        assertThat(new TimeWindow(60000, 10).getBucketCount(), is(6001));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLengthMustBeMultipleOfResolution() {
+        new TimeWindow(1000, 300);
+    }
+
+    @Test
+    public void testBuckets() {
+        TimeWindow window = new TimeWindow(1000, 100);
+        assertThat(window.bucketOf(1999), is(19L));
+        assertThat(window.bucketOf(-1), is(-1L));
+        assertThat(window.firstBucket(1999), is(9L));
+    }
+
+    @Test
+    public void testContains() {
+        TimeWindow window = new TimeWindow(1000, 100);
+        assertThat(window.contains(5000, 5000), is(true));
+        assertThat(window.contains(5000, 4000), is(true));
+        assertThat(window.contains(5000, 3999), is(false));
+        assertThat(window.contains(5000, 5001), is(false));
+    }
+
+    @Test
+    public void testParseLength() {
+        assertThat(TimeWindow.parseLength("500ms"), is(500L));
+        assertThat(TimeWindow.parseLength("10s"), is(10000L));
+        assertThat(TimeWindow.parseLength("60"), is(60000L));
+        assertThat(TimeWindow.parseLength("5m"), is(300000L));
+        assertThat(TimeWindow.parseLength(" 1h "), is(3600000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseInvalidLength() {
+        TimeWindow.parseLength("10d");
+    }
+}
@@ -0,0 +1,43 @@
+package com.challenge.service;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CachedClockTest {
+
+    @Test
+    public void testTimeNeverGoesBackwards() throws InterruptedException {
+        try (CachedClock clock = new CachedClock(1)) {
+            long previous = clock.millis();
+            for (int read = 0; read < 50; read++) {
+                Thread.sleep(1);
+                long millis = clock.millis();
+                assertThat(millis, greaterThanOrEqualTo(previous));
+                previous = millis;
+            }
+            assertThat(Math.abs(System.currentTimeMillis() - previous), lessThan(1000L));
+        }
+    }
+
+    @Test
+    public void testZonedViewReadsTheCachedTime() {
+        try (CachedClock clock = new CachedClock(60_000)) {
+            ZoneId berlin = ZoneId.of("Europe/Berlin");
+            Clock zoned = clock.withZone(berlin);
+
+            assertThat(zoned.getZone(), is(berlin));
+            assertThat(zoned.millis(), is(clock.millis()));
+            assertThat(zoned.instant(), is(clock.instant()));
+            assertThat(zoned.withZone(ZoneOffset.UTC), sameInstance(clock));
+        }
+    }
+}
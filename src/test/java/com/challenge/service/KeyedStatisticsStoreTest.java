@@ -0,0 +1,92 @@
+package com.challenge.service;
+
+import com.challenge.domain.Statistic;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KeyedStatisticsStoreTest {
+
+    private KeyedStatisticsStore keyedStore;
+
+    @Before
+    public void init() {
+        keyedStore = new KeyedStatisticsStore(3, 4, 1);
+    }
+
+    @Test
+    public void testSnapshotPerKey() {
+        assertThat(keyedStore.add(1, 10, 5, 12), is(true));
+        assertThat(keyedStore.add(1, 12, 3, 12), is(true));
+        assertThat(keyedStore.add(2, 11, 4, 12), is(true));
+
+        assertStatistic(keyedStore.snapshot(1, 12), 8, 2, 3, 5);
+        assertStatistic(keyedStore.snapshot(2, 12), 4, 1, 4, 4);
+        assertThat(keyedStore.snapshot(3, 12).getCount(), is(0L));
+    }
+
+    @Test
+    public void testExpiredBucketsRollOutOfTheWindow() {
+        keyedStore.add(1, 10, 5, 12);
+        keyedStore.add(1, 12, 3, 12);
+
+        assertStatistic(keyedStore.snapshot(1, 13), 3, 1, 3, 3);
+
+        keyedStore.add(1, 14, 2, 14);
+        assertStatistic(keyedStore.snapshot(1, 14), 5, 2, 2, 3);
+        assertThat(keyedStore.snapshot(1, 20).getCount(), is(0L));
+    }
+
+    @Test
+    public void testAddOutsideOfTheWindowIsRejected() {
+        assertThat(keyedStore.add(1, 9, 5, 12), is(false));
+        assertThat(keyedStore.add(1, 13, 5, 12), is(false));
+        assertThat(keyedStore.size(), is(0));
+    }
+
+    @Test
+    public void testLeastRecentlyWrittenKeyIsEvictedAtTheLimit() {
+        for (long key = 1; key <= 4; key++) {
+            keyedStore.add(key, 12, key, 12);
+        }
+        keyedStore.add(1, 12, 1, 12);
+        keyedStore.add(5, 12, 5, 12);
+
+        assertThat(keyedStore.size(), is(4));
+        assertThat(keyedStore.snapshot(2, 12).getCount(), is(0L));
+        assertThat(keyedStore.snapshot(1, 12).getCount(), is(2L));
+        assertThat(keyedStore.snapshot(5, 12).getCount(), is(1L));
+    }
+
+    @Test
+    public void testIdleKeysAreEvicted() {
+        keyedStore.add(1, 10, 5, 10);
+        keyedStore.add(2, 10, 5, 10);
+        keyedStore.add(3, 20, 5, 20);
+
+        assertThat(keyedStore.size(), is(1));
+        assertThat(keyedStore.snapshot(3, 20).getCount(), is(1L));
+    }
+
+    @Test
+    public void testManyKeysAcrossSegments() {
+        keyedStore = new KeyedStatisticsStore(3, 1 << 17, 8);
+        for (long key = 0; key < 1 << 16; key++) {
+            keyedStore.add(key * 31, 12, key, 12);
+        }
+        for (long key = 0; key < 1 << 16; key += 97) {
+            assertStatistic(keyedStore.snapshot(key * 31, 12), key, 1, key, key);
+        }
+    }
+
+    private static void assertStatistic(Statistic statistic, long sum, long count, long min, long max) {
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(sum)));
+        assertThat(statistic.getCount(), is(count));
+        assertThat(statistic.getMin(), is(min));
+        assertThat(statistic.getMax(), is(max));
+    }
+}
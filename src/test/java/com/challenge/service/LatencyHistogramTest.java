@@ -0,0 +1,47 @@
+package com.challenge.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int bucket = 0; bucket < histogram.getBucketCount() - 1; bucket++) {
+            long bound = histogram.getUpperBoundNanos(bucket);
+            assertThat(LatencyHistogram.bucketOf(bound), is(bucket));
+            assertThat(LatencyHistogram.bucketOf(bound + 1), is(bucket + 1));
+        }
+        assertThat(LatencyHistogram.bucketOf(0), is(0));
+        assertThat(LatencyHistogram.bucketOf(LatencyHistogram.MIN_NANOS), is(0));
+        assertThat(LatencyHistogram.bucketOf(LatencyHistogram.MIN_NANOS + 1), is(1));
+        assertThat(LatencyHistogram.bucketOf(Long.MAX_VALUE), is(histogram.getBucketCount() - 1));
+    }
+
+    @Test
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(1500);
+        histogram.record(1800);
+        histogram.record(-5);
+
+        assertThat(histogram.getCount(), is(4L));
+        assertThat(histogram.getCount(0), is(1L));
+        assertThat(histogram.getCount(1), is(1L));
+        assertThat(histogram.getCount(5), is(2L));
+        assertThat(histogram.getSumNanos(), is(3400L));
+    }
+
+    @Test
+    public void testSubMicrosecondDurationsLandInDistinctBuckets() {
+        long[] durations = {50, 100, 200, 400, 800};
+        for (int i = 0; i < durations.length; i++) {
+            assertThat(LatencyHistogram.bucketOf(durations[i]), is(i));
+        }
+        assertThat(new LatencyHistogram().getUpperBoundNanos(durations.length - 1), is(1024L));
+    }
+}
@@ -0,0 +1,40 @@
+package com.challenge.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A UTC clock that follows the system clock shifted by an offset that tests move forward instead of sleeping. The
+ * statistics expire buckets as the time moves forward, so the clock is never moved back.
+ */
+public class ManualClock extends Clock {
+
+    private volatile long offsetMillis;
+
+    public void advance(Duration duration) {
+        offsetMillis += duration.toMillis();
+    }
+
+    @Override
+    public long millis() {
+        return System.currentTimeMillis() + offsetMillis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        throw new UnsupportedOperationException();
+    }
+}
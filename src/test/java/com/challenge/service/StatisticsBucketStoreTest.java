@@ -0,0 +1,234 @@
+package com.challenge.service;
+
+import com.challenge.domain.HyperLogLog;
+import com.challenge.domain.LogHistogram;
+import com.challenge.domain.Statistic;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StatisticsBucketStoreTest {
+
+    private StatisticsBucketStore bucketStore;
+
+    @Before
+    public void init() {
+        bucketStore = new StatisticsBucketStore(3, 4);
+    }
+
+    @Test
+    public void testSnapshotOfWindow() {
+        assertThat(bucketStore.add(10, 5, 12), is(true));
+        assertThat(bucketStore.add(11, 3, 12), is(true));
+        assertThat(bucketStore.add(12, 4, 12), is(true));
+
+        Statistic statistic = bucketStore.snapshot(12);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(12)));
+        assertThat(statistic.getCount(), is(3L));
+        assertThat(statistic.getMax(), is(5L));
+        assertThat(statistic.getMin(), is(3L));
+    }
+
+    @Test
+    public void testExpiredSecondsRollOutOfTheWindow() {
+        bucketStore.add(10, 5, 12);
+        bucketStore.add(11, 3, 12);
+        bucketStore.add(12, 4, 12);
+
+        Statistic statistic = bucketStore.snapshot(13);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(7)));
+        assertThat(statistic.getCount(), is(2L));
+        assertThat(statistic.getMax(), is(4L));
+        assertThat(statistic.getMin(), is(3L));
+
+        statistic = bucketStore.snapshot(20);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(0)));
+        assertThat(statistic.getCount(), is(0L));
+    }
+
+    @Test
+    public void testReusedBucketIsReset() {
+        assertThat(bucketStore.add(10, 5, 10), is(true));
+        assertThat(bucketStore.add(13, 2, 13), is(true));
+
+        Statistic statistic = bucketStore.snapshot(13);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(2)));
+        assertThat(statistic.getCount(), is(1L));
+        assertThat(statistic.getMax(), is(2L));
+        assertThat(statistic.getMin(), is(2L));
+    }
+
+    @Test
+    public void testAddOutsideOfTheWindowIsRejected() {
+        assertThat(bucketStore.add(13, 2, 13), is(true));
+        assertThat(bucketStore.add(10, 5, 13), is(false));
+        assertThat(bucketStore.add(14, 5, 13), is(false));
+
+        Statistic statistic = bucketStore.snapshot(13);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(2)));
+        assertThat(statistic.getCount(), is(1L));
+    }
+
+    @Test
+    public void testExpire() {
+        bucketStore.add(10, 5, 11);
+        bucketStore.add(11, 3, 11);
+        bucketStore.expire(13);
+
+        Statistic statistic = bucketStore.snapshot(13);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(3)));
+        assertThat(statistic.getCount(), is(1L));
+        assertThat(statistic.getMax(), is(3L));
+        assertThat(statistic.getMin(), is(3L));
+    }
+
+    @Test
+    public void testSumOverflowsIntoTheHighWord() {
+        bucketStore.add(11, Long.MAX_VALUE, 12);
+        bucketStore.add(12, Long.MAX_VALUE, 12);
+
+        Statistic statistic = bucketStore.snapshot(12);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(2))));
+
+        statistic = bucketStore.snapshot(14);
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(Long.MAX_VALUE)));
+        assertThat(statistic.getCount(), is(1L));
+    }
+
+    @Test
+    public void testConcurrentWritesToTheSameSecond() throws InterruptedException {
+        Thread[] writers = new Thread[8];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                for (int j = 1; j <= 1000; j++) {
+                    bucketStore.add(12, j, 12);
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Statistic statistic = bucketStore.snapshot(12);
+        assertThat(statistic.getCount(), is(8000L));
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(8 * 500500)));
+        assertThat(statistic.getMax(), is(1000L));
+        assertThat(statistic.getMin(), is(1L));
+    }
+
+    @Test
+    public void testSnapshotOfShorterWindows() {
+        bucketStore = new StatisticsBucketStore(new int[]{1, 3, 5}, 4);
+        assertShorterWindows();
+    }
+
+    @Test
+    public void testSnapshotOfShorterWindowsInDirectMode() {
+        bucketStore = new StatisticsBucketStore(new int[]{1, 3, 5}, 4, null, null, StoreMode.DIRECT);
+        assertShorterWindows();
+    }
+
+    @Test
+    public void testHistogramAndRegistersInDirectMode() {
+        LogHistogram histogram = new LogHistogram(0.01);
+        HyperLogLog distinct = new HyperLogLog(4);
+        bucketStore = new StatisticsBucketStore(new int[]{3}, 2, histogram, distinct, StoreMode.DIRECT);
+        bucketStore.addWithPayer(10, 100, 1, 12);
+        bucketStore.addWithPayer(11, 200, 2, 12);
+        bucketStore.addWithPayer(12, 300, 1, 12);
+
+        Statistic statistic = bucketStore.snapshot(12);
+        assertThat(statistic.getCount(), is(3L));
+        assertThat(histogram.quantile(statistic.getHistogram(), 3, 1), is(histogram.valueOf(histogram.binOf(300))));
+        assertThat(distinct.estimate(statistic.getRegisters()), is(2L));
+
+        statistic = bucketStore.snapshot(14);
+        assertThat(statistic.getCount(), is(1L));
+        assertThat(distinct.estimate(statistic.getRegisters()), is(1L));
+    }
+
+    @Test
+    public void testRegistersOfWindowsFollowWritesAndExpiry() {
+        HyperLogLog distinct = new HyperLogLog(11);
+        bucketStore = new StatisticsBucketStore(new int[]{1, 3}, 1, null, distinct);
+        bucketStore.addWithPayer(10, 100, 1, 12);
+        bucketStore.addWithPayer(12, 100, 2, 12);
+        assertThat(distinct.estimate(bucketStore.snapshot(12, 0).getRegisters()), is(1L));
+        assertThat(distinct.estimate(bucketStore.snapshot(12, 1).getRegisters()), is(2L));
+
+        bucketStore.addWithPayer(12, 100, 3, 12);
+        bucketStore.addWithPayer(11, 100, 4, 12);
+        assertThat(distinct.estimate(bucketStore.snapshot(12, 0).getRegisters()), is(2L));
+        assertThat(distinct.estimate(bucketStore.snapshot(12, 1).getRegisters()), is(4L));
+
+        assertThat(distinct.estimate(bucketStore.snapshot(13, 0).getRegisters()), is(0L));
+        assertThat(distinct.estimate(bucketStore.snapshot(13, 1).getRegisters()), is(3L));
+    }
+
+    @Test
+    public void testRestoreDiscardsExpiredBuckets() {
+        bucketStore.add(10, 5, 12);
+        bucketStore.add(11, 3, 12);
+        bucketStore.add(12, 4, 12);
+        StatisticsSnapshot snapshot = new StatisticsSnapshot(1000, 10, 3, 0, 0);
+        bucketStore.copyInto(snapshot);
+
+        StatisticsBucketStore restored = new StatisticsBucketStore(3, 2);
+        assertThat(restored.restore(snapshot, 13), is(2L));
+        assertWindow(restored.snapshot(13), 7, 2, 3, 4);
+    }
+
+    @Test
+    public void testSnapshotOnlyHoldsBucketsWithTransactions() throws IOException {
+        LogHistogram histogram = new LogHistogram(0.01);
+        bucketStore = new StatisticsBucketStore(new int[]{3}, 2, histogram, null);
+        StatisticsSnapshot.Layout layout = new StatisticsSnapshot.Layout(1000, 3, histogram.getBinCount(), 0);
+        StatisticsSnapshot snapshot = new StatisticsSnapshot(1000, 10, 3, histogram.getBinCount(), 0);
+        bucketStore.copyInto(snapshot);
+        assertThat(snapshot.groupCount(), is(0));
+
+        bucketStore.add(10, 5, 12);
+        bucketStore.add(12, 4, 12);
+        snapshot = new StatisticsSnapshot(1000, 10, 3, histogram.getBinCount(), 0);
+        bucketStore.copyInto(snapshot);
+        assertThat(snapshot.groupCount(), is(2));
+
+        StatisticsBucketStore restored = new StatisticsBucketStore(new int[]{3}, 2, histogram, null);
+        assertThat(restored.restore(StatisticsSnapshot.fromBytes(snapshot.toBytes(), layout), 12), is(2L));
+        assertWindow(restored.snapshot(12), 9, 2, 4, 5);
+        assertThat(histogram.quantile(restored.snapshot(12).getHistogram(), 2, 1),
+                is(histogram.valueOf(histogram.binOf(5))));
+    }
+
+    private void assertShorterWindows() {
+        bucketStore.add(8, 1, 12);
+        bucketStore.add(10, 7, 12);
+        bucketStore.add(11, 2, 12);
+        bucketStore.add(12, 4, 12);
+
+        assertWindow(bucketStore.snapshot(12, 0), 4, 1, 4, 4);
+        assertWindow(bucketStore.snapshot(12, 1), 13, 3, 2, 7);
+        assertWindow(bucketStore.snapshot(12, 2), 14, 4, 1, 7);
+
+        bucketStore.add(13, 3, 13);
+        assertWindow(bucketStore.snapshot(13, 0), 3, 1, 3, 3);
+        assertWindow(bucketStore.snapshot(13, 1), 9, 3, 2, 4);
+        assertWindow(bucketStore.snapshot(13, 2), 16, 4, 2, 7);
+
+        assertWindow(bucketStore.snapshot(16, 0), 0, 0, Long.MAX_VALUE, Long.MIN_VALUE);
+        assertWindow(bucketStore.snapshot(16, 2), 7, 2, 3, 4);
+    }
+
+    private static void assertWindow(Statistic statistic, long sum, long count, long min, long max) {
+        assertThat(statistic.getSum(), is(BigInteger.valueOf(sum)));
+        assertThat(statistic.getCount(), is(count));
+        assertThat(statistic.getMin(), is(min));
+        assertThat(statistic.getMax(), is(max));
+    }
+}
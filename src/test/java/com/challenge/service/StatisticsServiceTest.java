@@ -1,31 +1,54 @@
 package com.challenge.service;
 
+import com.challenge.service.StatisticsMetrics.Outcome;
 import com.challenge.transfer.StatisticsOutput;
+import com.challenge.transfer.TransactionBatchOutput;
 import com.challenge.transfer.TransactionInput;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.CRC32;
 
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 public class StatisticsServiceTest {
 
+    private static final String[] QUANTILES = {"0.5", "0.95", "0.99"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private StatisticsService statisticsService;
 
     @Before
-    public void init() throws NoSuchFieldException, IllegalAccessException {
-        statisticsService = new StatisticsService();
-        Class statisticsServiceClass = StatisticsService.class;
-        Field field = statisticsServiceClass.getDeclaredField("transactionTtl");
-        field.setAccessible(true);
-        field.set(statisticsService, 60);
+    public void init() {
+        statisticsService = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000, QUANTILES,
+                0.01, 11);
     }
 
     @Test
@@ -116,6 +139,454 @@ public class StatisticsServiceTest {
         assertThat(statistics.getCount(), is(3L));
     }
 
+    @Test
+    public void getStatisticsIsExactForDecimalAmounts() {
+        TransactionInput transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(10)), 0);
+        transaction.setAmount(0.1);
+        for (int i = 0; i < 10; i++) {
+            statisticsService.addTransaction(transaction);
+        }
+        transaction.setAmount(0.2);
+        statisticsService.addTransaction(transaction);
+
+        StatisticsOutput statistics = statisticsService.getStatistics();
+
+        assertThat(statistics.getSum(), is(1.2d));
+        assertThat(statistics.getAvg(), is(0.11d));
+        assertThat(statistics.getMax(), is(0.2d));
+        assertThat(statistics.getMin(), is(0.1d));
+        assertThat(statistics.getCount(), is(11L));
+    }
+
+    @Test
+    public void testAddTransactionWithAmountOutOfRange() {
+        TransactionInput transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(10)), 0);
+        transaction.setAmount(1e300);
+        ResponseEntity responseEntity = statisticsService.addTransaction(transaction);
+        assertThat(responseEntity.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void testAddTransactions() {
+        TransactionBatch batch = statisticsService.newBatch();
+        batch.add(5, Instant.now().minus(Duration.ofSeconds(10)).toEpochMilli());
+        batch.add(3, Instant.now().minus(Duration.ofSeconds(15)).toEpochMilli());
+        batch.add(4, Instant.now().minus(Duration.ofSeconds(15)).toEpochMilli());
+        batch.add(7, Instant.now().minus(Duration.ofSeconds(61)).toEpochMilli());
+        batch.add(7, Instant.now().plus(Duration.ofSeconds(10)).toEpochMilli());
+        batch.add(1e300, Instant.now().toEpochMilli());
+        batch.reject();
+
+        TransactionBatchOutput output = statisticsService.addTransactions(batch);
+        assertThat(output, is(new TransactionBatchOutput(3, 2, 2)));
+
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        assertThat(statistics.getSum(), is(12d));
+        assertThat(statistics.getAvg(), is(4d));
+        assertThat(statistics.getMax(), is(5d));
+        assertThat(statistics.getMin(), is(3d));
+        assertThat(statistics.getCount(), is(3L));
+    }
+
+    @Test
+    public void testAddTransactionsOverManyBuckets() {
+        statisticsService = new StatisticsService(60, 10, new String[0], 2, 0, "heap", 1000, 1000, QUANTILES,
+                0.01, 0);
+        Instant now = Instant.now();
+        statisticsService.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        TransactionBatch batch = statisticsService.newBatch();
+        for (int transaction = 0; transaction < 1000; transaction++) {
+            batch.add(1 + transaction % 10, now.minus(Duration.ofMillis(transaction * 50 % 59000)).toEpochMilli());
+        }
+
+        assertThat(statisticsService.addTransactions(batch), is(new TransactionBatchOutput(1000, 0, 0)));
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        assertThat(statistics.getCount(), is(1000L));
+        assertThat(statistics.getSum(), is(5500d));
+        assertThat(statistics.getMin(), is(1d));
+        assertThat(statistics.getMax(), is(10d));
+    }
+
+    @Test
+    public void getStatisticsWithSubSecondResolution() {
+        statisticsService = new StatisticsService(60, 10, new String[0], 2, 0, "heap", 1000, 1000, new String[0],
+                0.01, 0);
+        Instant now = Instant.now();
+        statisticsService.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        TransactionInput transaction = getTransaction(now.minus(Duration.ofMillis(59990)), 5);
+        ResponseEntity responseEntity = statisticsService.addTransaction(transaction);
+        assertThat(responseEntity.getStatusCode(), is(HttpStatus.CREATED));
+
+        transaction = getTransaction(now.minus(Duration.ofMillis(60500)), 3);
+        responseEntity = statisticsService.addTransaction(transaction);
+        assertThat(responseEntity.getStatusCode(), is(HttpStatus.NO_CONTENT));
+
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        assertThat(statistics.getSum(), is(5d));
+        assertThat(statistics.getCount(), is(1L));
+    }
+
+    @Test
+    public void getStatisticsForConfiguredWindows() {
+        statisticsService = new StatisticsService(60, 1000, new String[]{"10s", "5m"}, 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        TransactionInput transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(5)), 5);
+        assertThat(statisticsService.addTransaction(transaction).getStatusCode(), is(HttpStatus.CREATED));
+        transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(30)), 3);
+        assertThat(statisticsService.addTransaction(transaction).getStatusCode(), is(HttpStatus.CREATED));
+        transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(120)), 4);
+        assertThat(statisticsService.addTransaction(transaction).getStatusCode(), is(HttpStatus.CREATED));
+
+        assertThat(statisticsService.getStatistics("10s").getSum(), is(5d));
+        assertThat(statisticsService.getStatistics("60s").getSum(), is(8d));
+        assertThat(statisticsService.getStatistics().getSum(), is(8d));
+        StatisticsOutput statistics = statisticsService.getStatistics("5m");
+        assertThat(statistics.getSum(), is(12d));
+        assertThat(statistics.getCount(), is(3L));
+        assertThat(statistics.getMin(), is(3d));
+        assertThat(statistics.getMax(), is(5d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getStatisticsForUnknownWindow() {
+        statisticsService.getStatistics("30s");
+    }
+
+    @Test
+    public void getStatisticsPerKey() {
+        long now = Instant.now().toEpochMilli();
+        assertThat(statisticsService.addTransaction(new TransactionInput(5, now - 1000, 7L)).getStatusCode(),
+                is(HttpStatus.CREATED));
+        assertThat(statisticsService.addTransaction(new TransactionInput(3, now - 2000, 7L)).getStatusCode(),
+                is(HttpStatus.CREATED));
+        assertThat(statisticsService.addTransaction(new TransactionInput(4, now - 2000, 8L)).getStatusCode(),
+                is(HttpStatus.CREATED));
+
+        TransactionBatch batch = statisticsService.newBatch();
+        assertThat(batch.addUnits(200, now - 3000), is(true));
+        batch.attachKey(7L);
+        assertThat(batch.addUnits(900, now - 61000), is(false));
+        statisticsService.addTransactions(batch);
+
+        StatisticsOutput statistics = statisticsService.getStatistics(7L);
+        assertThat(statistics.getSum(), is(10d));
+        assertThat(statistics.getCount(), is(3L));
+        assertThat(statistics.getMin(), is(2d));
+        assertThat(statistics.getMax(), is(5d));
+        assertThat(statisticsService.getStatistics(8L).getSum(), is(4d));
+        assertThat(statisticsService.getStatistics(9L).getCount(), is(0L));
+        assertThat(statisticsService.getStatistics().getCount(), is(4L));
+    }
+
+    @Test
+    public void getStatisticsWithPercentiles() {
+        long now = Instant.now().toEpochMilli();
+        TransactionBatch batch = statisticsService.newBatch();
+        for (int i = 1; i <= 1000; i++) {
+            batch.add(i, now - (i % 50) * 1000);
+        }
+        statisticsService.addTransactions(batch);
+        statisticsService.addTransaction(new TransactionInput(2000, now));
+
+        Map<String, Double> percentiles = statisticsService.getStatistics().getPercentiles();
+        assertThat(percentiles.keySet(), contains("p50", "p95", "p99"));
+        assertThat(percentiles.get("p50"), closeTo(501, 501 * 0.01));
+        assertThat(percentiles.get("p95"), closeTo(951, 951 * 0.01));
+        assertThat(percentiles.get("p99"), closeTo(991, 991 * 0.01));
+    }
+
+    @Test
+    public void getStatisticsIsCachedUntilTheNextWrite() {
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        assertThat(statisticsService.getStatistics(), sameInstance(statistics));
+
+        statisticsService.addTransaction(getTransaction(Instant.now(), 7));
+        assertThat(statisticsService.getStatistics(), not(sameInstance(statistics)));
+        assertThat(statisticsService.getStatistics().getCount(), is(2L));
+    }
+
+    @Test
+    public void cachedStatisticsCannotBeModified() {
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        try {
+            statistics.setSum(0);
+            fail("Shared statistics should be read-only");
+        } catch (UnsupportedOperationException e) {
+            assertThat(statisticsService.getStatistics().getSum(), is(5d));
+        }
+        try {
+            statistics.getPercentiles().clear();
+            fail("Shared percentiles should be read-only");
+        } catch (UnsupportedOperationException e) {
+            assertThat(statisticsService.getStatistics().getPercentiles().size(), is(3));
+        }
+    }
+
+    @Test
+    public void getStatisticsWithoutPercentiles() {
+        statisticsService = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000, new String[0],
+                0.01, 11);
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        assertThat(statisticsService.getStatistics().getPercentiles(), nullValue());
+    }
+
+    @Test
+    public void getStatisticsWithDistinctPayers() {
+        long now = Instant.now().toEpochMilli();
+        TransactionBatch batch = statisticsService.newBatch();
+        for (int i = 0; i < 5000; i++) {
+            assertThat(batch.addUnits(100, now - (i % 60) * 1000), is(true));
+            batch.attachPayer(i % 1000);
+        }
+        statisticsService.addTransactions(batch);
+        for (long payer = 1000; payer < 1100; payer++) {
+            TransactionInput transaction = getTransaction(Instant.now(), 1);
+            transaction.setPayerId(payer);
+            statisticsService.addTransaction(transaction);
+        }
+        statisticsService.addTransaction(getTransaction(Instant.now(), 1));
+
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        assertThat(statistics.getCount(), is(5101L));
+        assertThat((double) statistics.getDistinctCount(), closeTo(1100, 1100 * 0.07));
+    }
+
+    @Test
+    public void getStatisticsWithoutDistinctCountUnlessEnabled() {
+        statisticsService = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000, new String[0],
+                0.01, 0);
+        TransactionInput transaction = getTransaction(Instant.now(), 1);
+        transaction.setPayerId(7L);
+        statisticsService.addTransaction(transaction);
+
+        assertThat(statisticsService.getStatistics().getCount(), is(1L));
+        assertThat(statisticsService.getStatistics().getDistinctCount(), nullValue());
+        assertThat(statisticsService.getStatistics().getPercentiles(), nullValue());
+    }
+
+    @Test
+    public void testRestoreSnapshot() throws IOException {
+        for (int second = 1; second <= 20; second++) {
+            TransactionInput transaction = getTransaction(Instant.now().minus(Duration.ofSeconds(second)), second);
+            transaction.setPayerId((long) second % 7);
+            statisticsService.addTransaction(transaction);
+        }
+        Path path = folder.getRoot().toPath().resolve("statistics.snapshot");
+        statisticsService.writeSnapshot(path);
+
+        StatisticsService restored = new StatisticsService(60, 1000, new String[0], 2, 0, "direct", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        assertThat(restored.restoreSnapshot(path), is(20L));
+        assertThat(restored.getStatistics(), is(statisticsService.getStatistics()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRestoreCorruptSnapshot() throws IOException {
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        Path path = folder.getRoot().toPath().resolve("statistics.snapshot");
+        statisticsService.writeSnapshot(path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+
+        statisticsService.restoreSnapshot(path);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRestoreSnapshotOfAnotherResolution() throws IOException {
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        Path path = folder.getRoot().toPath().resolve("statistics.snapshot");
+        statisticsService.writeSnapshot(path);
+
+        new StatisticsService(60, 500, new String[0], 2, 0, "heap", 1000, 1000, QUANTILES, 0.01, 11)
+                .restoreSnapshot(path);
+    }
+
+    @Test
+    public void getStatisticsAfterTheClockMoved() {
+        Instant now = Instant.now();
+        statisticsService.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        statisticsService.addTransaction(getTransaction(now.minus(Duration.ofSeconds(30)), 5));
+        statisticsService.addTransaction(getTransaction(now, 3));
+        assertThat(statisticsService.getStatistics().getCount(), is(2L));
+
+        statisticsService.setClock(Clock.fixed(now.plus(Duration.ofSeconds(31)), ZoneOffset.UTC));
+        assertThat(statisticsService.getStatistics().getSum(), is(3d));
+
+        statisticsService.setClock(Clock.fixed(now.plus(Duration.ofSeconds(61)), ZoneOffset.UTC));
+        assertThat(statisticsService.getStatistics(), is(new StatisticsOutput()));
+        assertThat(statisticsService.addTransaction(getTransaction(now, 3)).getStatusCode(),
+                is(HttpStatus.NO_CONTENT));
+    }
+
+    @Test
+    public void getClusterStatisticsOfMergedPartials() throws IOException {
+        StatisticsService otherNode = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        StatisticsService singleNode = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        TransactionInput first = getTransaction(Instant.now().minus(Duration.ofSeconds(20)), 5);
+        first.setPayerId(1L);
+        TransactionInput second = getTransaction(Instant.now(), 3);
+        second.setPayerId(2L);
+        TransactionInput third = getTransaction(Instant.now(), 7);
+        third.setPayerId(1L);
+        statisticsService.addTransaction(first);
+        otherNode.addTransaction(second);
+        otherNode.addTransaction(third);
+        singleNode.addTransaction(first);
+        singleNode.addTransaction(second);
+        singleNode.addTransaction(third);
+        assertThat(statisticsService.getClusterStatistics(), is(statisticsService.getStatistics()));
+
+        StatisticsSnapshot partials = statisticsService.readPartials(otherNode.getPartials());
+        statisticsService.mergePartials(Collections.singletonList(partials));
+        assertThat(statisticsService.getClusterStatistics(), is(singleNode.getStatistics()));
+        assertThat(statisticsService.getClusterStatistics().getDistinctCount(), is(2L));
+        assertThat(statisticsService.getStatistics().getCount(), is(1L));
+    }
+
+    @Test(expected = IOException.class)
+    public void testPartialsOfAnotherResolution() throws IOException {
+        StatisticsService otherNode = new StatisticsService(60, 500, new String[0], 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        statisticsService.readPartials(otherNode.getPartials());
+    }
+
+    @Test(expected = IOException.class)
+    public void testPartialsOfAnotherIntervalAreRejectedBeforeTheyAreAllocated() throws IOException {
+        byte[] partials = statisticsService.getPartials();
+        // a peer claiming a huge bucket count in an otherwise valid header and checksum
+        ByteBuffer.wrap(partials).putInt(32, Integer.MAX_VALUE);
+        CRC32 checksum = new CRC32();
+        checksum.update(partials, 0, partials.length - 8);
+        ByteBuffer.wrap(partials).putLong(partials.length - 8, checksum.getValue());
+
+        statisticsService.readPartials(partials);
+    }
+
+    @Test
+    public void readPartialsOfFineBucketsOnlyAllocatesTheBucketsWithTransactions() throws IOException {
+        StatisticsService otherNode = new StatisticsService(60, 10, new String[0], 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        statisticsService = new StatisticsService(60, 10, new String[0], 2, 0, "heap", 1000, 1000, QUANTILES, 0.01,
+                11);
+        otherNode.addTransaction(getTransaction(Instant.now(), 3));
+        otherNode.addTransaction(getTransaction(Instant.now().minus(Duration.ofSeconds(30)), 4));
+
+        StatisticsSnapshot partials = statisticsService.readPartials(otherNode.getPartials());
+        assertThat(partials.groupCount(), is(2));
+        statisticsService.mergePartials(Collections.singletonList(partials));
+        assertThat(statisticsService.getClusterStatistics(), is(otherNode.getStatistics()));
+    }
+
+    @Test
+    public void mergePartialsIntoTheSameStoreOnEveryPull() throws IOException {
+        StatisticsService otherNode = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000,
+                QUANTILES, 0.01, 11);
+        otherNode.addTransaction(getTransaction(Instant.now(), 3));
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        statisticsService.mergePartials(Collections.singletonList(
+                statisticsService.readPartials(otherNode.getPartials())));
+        assertThat(statisticsService.getClusterStatistics().getSum(), is(8d));
+
+        otherNode.addTransaction(getTransaction(Instant.now(), 4));
+        statisticsService.mergePartials(Collections.singletonList(
+                statisticsService.readPartials(otherNode.getPartials())));
+        assertThat(statisticsService.getClusterStatistics().getSum(), is(12d));
+        assertThat(statisticsService.getClusterStatistics().getCount(), is(3L));
+
+        statisticsService.mergePartials(Collections.emptyList());
+        assertThat(statisticsService.getClusterStatistics().getSum(), is(5d));
+    }
+
+    @Test
+    public void testMetrics() {
+        statisticsService.addTransaction(getTransaction(Instant.now(), 5));
+        statisticsService.addTransaction(getTransaction(Instant.now().minus(Duration.ofSeconds(1)), 5));
+        statisticsService.addTransaction(getTransaction(Instant.now().minus(Duration.ofSeconds(61)), 5));
+        statisticsService.addTransaction(getTransaction(Instant.now().plus(Duration.ofSeconds(10)), 5));
+        TransactionBatch batch = statisticsService.newBatch();
+        batch.add(5, Instant.now().toEpochMilli());
+        batch.reject();
+        statisticsService.addTransactions(batch);
+        statisticsService.getStatistics();
+
+        StatisticsMetrics metrics = statisticsService.getMetrics();
+        assertThat(metrics.getCount(Outcome.ACCEPTED), is(3L));
+        assertThat(metrics.getCount(Outcome.EXPIRED), is(1L));
+        assertThat(metrics.getCount(Outcome.FUTURE), is(1L));
+        assertThat(metrics.getCount(Outcome.INVALID), is(1L));
+        assertThat(metrics.getAddTransactionLatency().getCount(), is(4L));
+        assertThat(metrics.getAddTransactionsLatency().getCount(), is(1L));
+        assertThat(metrics.getGetStatisticsLatency().getCount(), is(1L));
+        assertThat(metrics.getExpiryLatency().getCount(), greaterThanOrEqualTo(1L));
+        assertThat(statisticsService.getLiveBucketCount(), both(greaterThanOrEqualTo(1)).and(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void addTransactionsThroughTheQueue() {
+        TransactionQueue queue = new TransactionQueue(16, "reject");
+        statisticsService.setTransactionQueue(queue);
+        long now = Instant.now().toEpochMilli();
+        assertThat(statisticsService.addTransaction(getTransaction(Instant.now(), 5)).getStatusCode(),
+                is(HttpStatus.CREATED));
+        assertThat(statisticsService.addTransaction(new TransactionInput(3, now - 1000, 7L)).getStatusCode(),
+                is(HttpStatus.CREATED));
+        assertThat(statisticsService.addTransaction(getTransaction(Instant.now().minus(Duration.ofSeconds(61)), 5))
+                .getStatusCode(), is(HttpStatus.NO_CONTENT));
+        queue.close();
+
+        assertThat(queue.getDepth(), is(0L));
+        assertThat(statisticsService.getStatistics().getSum(), is(8d));
+        assertThat(statisticsService.getStatistics(7L).getCount(), is(1L));
+        assertThat(statisticsService.getMetrics().getCount(Outcome.ACCEPTED), is(2L));
+        assertThat(statisticsService.addTransaction(getTransaction(Instant.now(), 5)).getStatusCode(),
+                is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(statisticsService.getMetrics().getCount(Outcome.DROPPED), is(1L));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refuseTheQueueWithAStrictTransactionLog() throws IOException {
+        try (TransactionLog transactionLog = new TransactionLog(folder.getRoot().toString(), "always", 10, 1 << 20,
+                1 << 20, 1000)) {
+            statisticsService.setTransactionLog(transactionLog);
+            statisticsService.setTransactionQueue(new TransactionQueue(16, "reject"));
+        }
+    }
+
+    @Test
+    public void blockOnAddWithABlockingQueue() {
+        assertThat(statisticsService.isBlockingOnAdd(), is(false));
+        try (TransactionQueue queue = new TransactionQueue(16, "reject")) {
+            statisticsService.setTransactionQueue(queue);
+            assertThat(statisticsService.isBlockingOnAdd(), is(false));
+        }
+        try (TransactionQueue queue = new TransactionQueue(16, "block")) {
+            statisticsService.setTransactionQueue(queue);
+            assertThat(statisticsService.isBlockingOnAdd(), is(true));
+        }
+    }
+
+    @Test
+    public void countQueuedTransactionsTheLogFailedAsFailed() throws IOException {
+        TransactionLog transactionLog = new TransactionLog(folder.getRoot().toString(), "interval", 10, 1 << 20,
+                1 << 20, 1000);
+        statisticsService.setTransactionLog(transactionLog);
+        transactionLog.close();
+        TransactionQueue queue = new TransactionQueue(16, "reject");
+        statisticsService.setTransactionQueue(queue);
+        assertThat(statisticsService.addTransaction(getTransaction(Instant.now(), 5)).getStatusCode(),
+                is(HttpStatus.CREATED));
+        queue.close();
+
+        assertThat(queue.getFailed(), is(1L));
+        assertThat(statisticsService.getMetrics().getCount(Outcome.FAILED), is(1L));
+        assertThat(statisticsService.getStatistics().getCount(), is(0L));
+    }
+
     private TransactionInput getTransaction(Instant time, int amount) {
         TransactionInput transactionInput = new TransactionInput();
         transactionInput.setAmount(amount);
@@ -0,0 +1,139 @@
+package com.challenge.service;
+
+import com.challenge.transfer.TransactionInput;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class TransactionLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TransactionLog transactionLog;
+
+    @After
+    public void close() throws IOException {
+        if (transactionLog != null) {
+            transactionLog.close();
+        }
+    }
+
+    @Test
+    public void testReplayRecordsOfThePreviousRun() throws IOException {
+        transactionLog = open("always");
+        transactionLog.awaitDurable(transactionLog.append(500, 1000, null, null));
+        transactionLog.awaitDurable(transactionLog.append(-7, 2000, 42L, null));
+        transactionLog.awaitDurable(transactionLog.append(9, 3000, 43L, 11L));
+        transactionLog.close();
+
+        transactionLog = open("always");
+        assertThat(replay(transactionLog), contains("500@1000", "-7@2000 key 42", "9@3000 key 43 payer 11"));
+    }
+
+    @Test
+    public void testTruncatedFrameEndsTheSegment() throws IOException {
+        transactionLog = open("never");
+        transactionLog.append(1, 1000, null, null);
+        transactionLog.close();
+        transactionLog = open("never");
+        transactionLog.append(2, 2000, null, 5L);
+        transactionLog.close();
+        try (FileChannel channel = FileChannel.open(segments().get(1), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        transactionLog = open("never");
+        assertThat(replay(transactionLog), contains("1@1000"));
+    }
+
+    @Test
+    public void testReplayIntoStatistics() throws IOException {
+        transactionLog = open("interval");
+        StatisticsService statisticsService = newService();
+        statisticsService.setTransactionLog(transactionLog);
+        long now = Instant.now().toEpochMilli();
+        TransactionInput expired = new TransactionInput(3, now - 61_000);
+        statisticsService.addTransaction(expired);
+        statisticsService.addTransaction(new TransactionInput(5, now - 1000, 7L));
+        TransactionBatch batch = statisticsService.newBatch();
+        batch.add(10, now - 2000);
+        batch.attachPayer(3);
+        batch.attachKey(7);
+        batch.add(20, now - 3000);
+        statisticsService.addTransactions(batch);
+        transactionLog.close();
+
+        transactionLog = open("interval");
+        StatisticsService restored = newService();
+        restored.setTransactionLog(transactionLog);
+        assertThat(restored.replayTransactionLog(), is(3L));
+        assertThat(restored.getStatistics(), is(statisticsService.getStatistics()));
+        assertThat(restored.getStatistics(7), is(statisticsService.getStatistics(7)));
+        assertThat(restored.getStatistics().getDistinctCount(), is(1L));
+    }
+
+    @Test
+    public void testAppendFailsWhileThePendingRecordsAreFull() throws IOException {
+        transactionLog = open("always", TransactionLog.MAX_RECORD_BYTES, 0);
+        int full = 0;
+        long sequence = 0;
+        for (int record = 0; record < 10000 && full == 0; record++) {
+            try {
+                sequence = transactionLog.append(record, 1000, null, null);
+            } catch (IOException e) {
+                assertThat(e.getMessage(), startsWith("Transaction log is full"));
+                full++;
+            }
+        }
+        assertThat(full, is(1));
+
+        transactionLog.awaitDurable(sequence);
+        transactionLog.awaitDurable(transactionLog.append(1, 2000, null, null));
+    }
+
+    private TransactionLog open(String sync) throws IOException {
+        return open(sync, 1 << 20, 1000);
+    }
+
+    private TransactionLog open(String sync, int maxPendingBytes, long pendingTimeoutMillis) throws IOException {
+        return new TransactionLog(folder.getRoot().toString(), sync, 10, 1 << 20, maxPendingBytes,
+                pendingTimeoutMillis);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static StatisticsService newService() {
+        return new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000, new String[]{"0.5"}, 0.01,
+                11);
+    }
+
+    private static List<String> replay(TransactionLog transactionLog) throws IOException {
+        List<String> records = new ArrayList<>();
+        transactionLog.replay((units, timestamp, key, hasKey, payerId, hasPayer) ->
+                records.add(units + "@" + timestamp + (hasKey ? " key " + key : "")
+                        + (hasPayer ? " payer " + payerId : "")));
+        return records;
+    }
+}
@@ -0,0 +1,146 @@
+package com.challenge.service;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+public class TransactionQueueTest {
+
+    private StatisticsService statisticsService;
+    private long now;
+
+    @Before
+    public void init() {
+        statisticsService = new StatisticsService(60, 1000, new String[0], 2, 0, "heap", 1000, 1000, new String[0],
+                0.01, 0);
+        now = Instant.now().toEpochMilli();
+    }
+
+    @Test
+    public void roundCapacityUpToAPowerOfTwo() {
+        assertThat(new TransactionQueue(1, "reject").getCapacity(), is(1));
+        assertThat(new TransactionQueue(5, "reject").getCapacity(), is(8));
+        assertThat(new TransactionQueue(8, "reject").getCapacity(), is(8));
+        assertThat(new TransactionQueue(0, "reject").isEnabled(), is(false));
+    }
+
+    @Test
+    public void rejectWhenFullUntilDrained() {
+        TransactionQueue queue = new TransactionQueue(4, "drop");
+        for (int transaction = 0; transaction < 4; transaction++) {
+            assertThat(queue.offer(100 + transaction, now, null, null), is(true));
+        }
+        assertThat(queue.offer(100, now, null, null), is(false));
+        assertThat(queue.getDepth(), is(4L));
+
+        TransactionBatch batch = statisticsService.newBatch();
+        assertThat(queue.drain(batch, 3), is(3));
+        assertThat(queue.getDepth(), is(1L));
+        assertThat(queue.offer(200, now, 7L, null), is(true));
+        assertThat(queue.drain(batch, 10), is(2));
+        assertThat(queue.drain(batch, 10), is(0));
+        statisticsService.addTransactions(batch);
+
+        assertThat(statisticsService.getStatistics().getSum(), is(6.06));
+        assertThat(statisticsService.getStatistics(7L).getSum(), is(2d));
+    }
+
+    @Test
+    public void blockWhenFullUntilTheWriterMadeRoom() throws InterruptedException {
+        TransactionQueue queue = new TransactionQueue(2, "block");
+        queue.offer(100, now, null, null);
+        queue.offer(100, now, null, null);
+        Thread producer = new Thread(() -> queue.offer(100, now, null, null));
+        producer.start();
+        producer.join(100);
+        assertThat(producer.isAlive(), is(true));
+
+        queue.drain(statisticsService.newBatch(), 1);
+        producer.join(10000);
+        assertThat(producer.isAlive(), is(false));
+        assertThat(queue.getDepth(), is(2L));
+    }
+
+    @Test
+    public void countTheTransactionsOfAFailedBatchAndKeepWriting() throws InterruptedException {
+        TransactionQueue queue = new TransactionQueue(16, "reject");
+        AtomicBoolean failing = new AtomicBoolean(true);
+        queue.start(statisticsService::newBatch, batch -> {
+            if (failing.getAndSet(false)) {
+                throw new IllegalStateException("sink failed");
+            }
+            statisticsService.addTransactions(batch);
+        });
+        queue.offer(100, now, null, null);
+        queue.offer(100, now, null, null);
+        while (failing.get()) {
+            Thread.sleep(1);
+        }
+        queue.offer(300, now, null, null);
+        queue.close();
+
+        assertThat(queue.getFailed(), both(greaterThanOrEqualTo(1L)).and(lessThanOrEqualTo(2L)));
+        assertThat(statisticsService.getStatistics().getCount(), is(3 - queue.getFailed()));
+    }
+
+    @Test
+    public void drainConcurrentProducers() throws InterruptedException {
+        TransactionQueue queue = new TransactionQueue(1024, "block");
+        LongAdder accepted = new LongAdder();
+        queue.start(statisticsService::newBatch,
+                batch -> accepted.add(statisticsService.addTransactions(batch).getAccepted()));
+        List<Thread> producers = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            Thread producer = new Thread(() -> {
+                for (int transaction = 0; transaction < 10000; transaction++) {
+                    queue.offer(100, now, null, null);
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        queue.close();
+
+        assertThat(accepted.sum(), is(40000L));
+        assertThat(statisticsService.getStatistics().getCount(), is(40000L));
+        assertThat(queue.offer(100, now, null, null), is(false));
+    }
+
+    @Test
+    public void addEveryTransactionOfferedWhileClosing() throws InterruptedException {
+        TransactionQueue queue = new TransactionQueue(1024, "block");
+        queue.start(statisticsService::newBatch, statisticsService::addTransactions);
+        LongAdder offered = new LongAdder();
+        List<Thread> producers = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            Thread producer = new Thread(() -> {
+                while (queue.offer(100, now, null, null)) {
+                    offered.increment();
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        Thread.sleep(20);
+        queue.close();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertThat(statisticsService.getStatistics().getCount(), is(offered.sum()));
+    }
+}
@@ -0,0 +1,58 @@
+package com.challenge.web;
+
+import com.challenge.StatisticsApplication;
+import com.challenge.transfer.TransactionInput;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = StatisticsApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class MetricsControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private String getUrlForUri(String uri) {
+        return "http://localhost:" + port + uri;
+    }
+
+    @Test
+    public void getMetrics() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        restTemplate.exchange(getUrlForUri("/transactions"), HttpMethod.POST,
+                new HttpEntity<>(new TransactionInput(-1, Instant.now().toEpochMilli()), headers), Void.class);
+
+        ResponseEntity<String> response = restTemplate.getForEntity(getUrlForUri("/metrics"), String.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().getContentType().toString(), startsWith("text/plain"));
+        assertThat(response.getBody(), containsString("# TYPE transactions_total counter\n"));
+        assertThat(response.getBody(), containsString("add_transaction_duration_seconds_bucket{le=\"+Inf\"}"));
+        assertThat(response.getBody(), containsString("statistics_live_buckets "));
+        assertThat(response.getBody(), containsString("transaction_queue_depth 0\n"));
+        assertThat(response.getBody().matches("(?s).*transactions_total\\{outcome=\"invalid\"} [1-9].*"), is(true));
+    }
+}
@@ -0,0 +1,108 @@
+package com.challenge.web;
+
+import com.challenge.StatisticsApplication;
+import com.challenge.transfer.StatisticsOutput;
+import com.challenge.transfer.TransactionBatchOutput;
+import com.challenge.transfer.TransactionInput;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = StatisticsApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "netty.server.port=0")
+@ActiveProfiles("test")
+public class NettyHttpServerTest {
+
+    @Autowired
+    private NettyHttpServer nettyHttpServer;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private HttpHeaders headers;
+
+    @Before
+    public void setup() {
+        headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+    }
+
+    private String getUrlForUri(String uri) {
+        return "http://localhost:" + nettyHttpServer.getPort() + uri;
+    }
+
+    @Test
+    public void addTransactionAndGetStatisticsForKey() {
+        long key = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        TransactionInput transaction = new TransactionInput(12.5, Instant.now().toEpochMilli(), key);
+        ResponseEntity<Void> created = restTemplate.exchange(getUrlForUri("/transactions"), HttpMethod.POST,
+                new HttpEntity<>(transaction, headers), Void.class);
+        assertThat("Status code should be 201", created.getStatusCode(), is(HttpStatus.CREATED));
+
+        ResponseEntity<StatisticsOutput> response = restTemplate.getForEntity(getUrlForUri("/statistics/" + key),
+                StatisticsOutput.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(new StatisticsOutput(12.5, 12.5, 12.5, 12.5, 1)));
+    }
+
+    @Test
+    public void addInvalidTransaction() {
+        ResponseEntity<Void> response = restTemplate.exchange(getUrlForUri("/transactions"), HttpMethod.POST,
+                new HttpEntity<>(new TransactionInput(-1, Instant.now().toEpochMilli()), headers), Void.class);
+        assertThat("Status code should be 400", response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+
+        response = restTemplate.exchange(getUrlForUri("/transactions"), HttpMethod.POST,
+                new HttpEntity<>("{\"amount\":", headers), Void.class);
+        assertThat("Status code should be 400", response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void addTransactionBatch() {
+        long now = Instant.now().toEpochMilli();
+        String body = "[{\"amount\":1,\"timestamp\":" + now + "},{\"amount\":2,\"timestamp\":" + now + "}]";
+        ResponseEntity<TransactionBatchOutput> response = restTemplate.exchange(getUrlForUri("/transactions/batch"),
+                HttpMethod.POST, new HttpEntity<>(body, headers), TransactionBatchOutput.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody().getAccepted(), is(2L));
+    }
+
+    @Test
+    public void getStatisticsNotModified() {
+        ResponseEntity<StatisticsOutput> response = restTemplate.getForEntity(getUrlForUri("/statistics"),
+                StatisticsOutput.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        String etag = response.getHeaders().getETag();
+        assertThat(etag, notNullValue());
+
+        headers.setIfNoneMatch(etag);
+        response = restTemplate.exchange(getUrlForUri("/statistics"), HttpMethod.GET, new HttpEntity<>(headers),
+                StatisticsOutput.class);
+        assertThat("Status code should be 304", response.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+    }
+
+    @Test
+    public void unknownPathAndMethod() {
+        ResponseEntity<String> response = restTemplate.getForEntity(getUrlForUri("/unknown"), String.class);
+        assertThat("Status code should be 404", response.getStatusCode(), is(HttpStatus.NOT_FOUND));
+
+        response = restTemplate.exchange(getUrlForUri("/statistics"), HttpMethod.DELETE, HttpEntity.EMPTY,
+                String.class);
+        assertThat("Status code should be 405", response.getStatusCode(), is(HttpStatus.METHOD_NOT_ALLOWED));
+        assertThat(nettyHttpServer.getPort(), greaterThan(0));
+    }
+}
@@ -0,0 +1,113 @@
+package com.challenge.web;
+
+import com.challenge.StatisticsApplication;
+import com.challenge.service.StatisticsService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Instant;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = StatisticsApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"ingest.server.port=0", "ingest.server.max-frame-length=65536",
+                "ingest.server.max-pending-frames=2"})
+@ActiveProfiles("test")
+public class NettyIngestServerTest {
+
+    @Autowired
+    private NettyIngestServer nettyIngestServer;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
+    private Socket socket;
+    private DataOutputStream out;
+    private DataInputStream in;
+
+    @Before
+    public void connect() throws IOException {
+        socket = new Socket("localhost", nettyIngestServer.getPort());
+        socket.setSoTimeout(10000);
+        out = new DataOutputStream(socket.getOutputStream());
+        in = new DataInputStream(socket.getInputStream());
+    }
+
+    @After
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void writeFrame(double[] amounts, long[] timestamps) throws IOException {
+        out.writeInt(amounts.length * TransactionFrameHandler.TRANSACTION_BYTES);
+        for (int transaction = 0; transaction < amounts.length; transaction++) {
+            out.writeDouble(amounts[transaction]);
+            out.writeLong(timestamps[transaction]);
+        }
+        out.flush();
+    }
+
+    private void assertAck(long accepted, long expired, long invalid) throws IOException {
+        assertThat(in.readInt(), is(TransactionFrameHandler.OK));
+        assertThat(in.readLong(), is(accepted));
+        assertThat(in.readLong(), is(expired));
+        assertThat(in.readLong(), is(invalid));
+    }
+
+    @Test
+    public void addFrameOfTransactions() throws IOException {
+        long now = Instant.now().toEpochMilli();
+        long count = statisticsService.getStatistics().getCount();
+        writeFrame(new double[]{1.5, 2.5, -1, 3, Double.NaN}, new long[]{now, now, now, now - 3_600_000, now});
+        assertAck(2, 1, 2);
+        assertThat(statisticsService.getStatistics().getCount(), greaterThanOrEqualTo(count + 2));
+
+        writeFrame(new double[0], new long[0]);
+        assertAck(0, 0, 0);
+    }
+
+    @Test
+    public void ackPipelinedFramesInOrder() throws IOException {
+        long now = Instant.now().toEpochMilli();
+        double[] amounts = new double[4000];
+        long[] timestamps = new long[4000];
+        for (int transaction = 0; transaction < amounts.length; transaction++) {
+            amounts[transaction] = 1 + transaction % 100;
+            timestamps[transaction] = now;
+        }
+        for (int frame = 0; frame < 50; frame++) {
+            writeFrame(amounts, timestamps);
+        }
+        for (int frame = 0; frame < 50; frame++) {
+            assertAck(amounts.length, 0, 0);
+        }
+    }
+
+    @Test
+    public void closeOnPartialTransaction() throws IOException {
+        out.writeInt(TransactionFrameHandler.TRANSACTION_BYTES + 1);
+        out.write(new byte[TransactionFrameHandler.TRANSACTION_BYTES + 1]);
+        out.flush();
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    public void closeOnTooLongFrame() throws IOException {
+        out.writeInt(65536 + TransactionFrameHandler.TRANSACTION_BYTES);
+        out.flush();
+        assertThat(in.read(), is(-1));
+    }
+}
@@ -1,8 +1,13 @@
 package com.challenge.web;
 
 import com.challenge.StatisticsApplication;
+import com.challenge.service.ClusterStatistics;
+import com.challenge.service.ManualClock;
+import com.challenge.service.StatisticsService;
 import com.challenge.transfer.StatisticsOutput;
 import com.challenge.transfer.TransactionInput;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,36 +15,78 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.*;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.time.Instant;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
-import static org.junit.Assert.fail;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = StatisticsApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(classes = {StatisticsApplication.class, StatisticsControllerTest.ClockConfiguration.class},
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
 public class StatisticsControllerTest {
 
+    @TestConfiguration
+    static class ClockConfiguration {
+
+        @Bean
+        @Primary
+        public ManualClock manualClock() {
+            return new ManualClock();
+        }
+    }
+
     @LocalServerPort
     private int port;
 
+    @Autowired
+    private ManualClock clock;
+
+    @Autowired
+    private StatisticsService statisticsService;
+
     @Value("${transaction.acceptance.time:5}")
     private int transactionTtl;
 
     @Autowired
     private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
     private HttpHeaders headers;
 
+    @After
+    public void expireTransactions() {
+        clock.advance(Duration.ofSeconds(transactionTtl + 1));
+    }
+
     @Before
     public void setup() {
         headers = new HttpHeaders();
@@ -65,21 +112,26 @@ public class StatisticsControllerTest {
 
         for (int i = 0; i < 20; i++) {
             TransactionInput transaction = new TransactionInput(
-                    ThreadLocalRandom.current().nextDouble(0, 10000),
-                    Instant.now().minus(1, ChronoUnit.SECONDS).toEpochMilli());
+                    BigDecimal.valueOf(ThreadLocalRandom.current().nextDouble(0.01, 10000))
+                            .setScale(2, RoundingMode.HALF_UP).doubleValue(),
+                    clock.instant().minus(1, ChronoUnit.SECONDS).toEpochMilli());
             transactions.add(transaction);
         }
         transactions.forEach(this::postTransaction);
 
         ResponseEntity<StatisticsOutput> response = doRequest();
         assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
-        assertThat(response.getBody(), is(calculateStatistics(transactions)));
-
-        try {
-            Thread.sleep(transactionTtl * 1000);
-        } catch (InterruptedException e) {
-            fail("Thread should not be interrupted");
+        StatisticsOutput expected = calculateStatistics(transactions);
+        StatisticsOutput statistics = response.getBody();
+        assertThat(statistics.getPercentiles().keySet(), contains("p50", "p95", "p99"));
+        for (double percentile : statistics.getPercentiles().values()) {
+            assertThat(percentile,
+                    both(greaterThanOrEqualTo(expected.getMin())).and(lessThanOrEqualTo(expected.getMax())));
         }
+        statistics.setPercentiles(null);
+        assertThat(statistics, is(expected));
+
+        clock.advance(Duration.ofSeconds(transactionTtl + 1));
 
         StatisticsOutput defaultStatistics = new StatisticsOutput();
 
@@ -88,26 +140,120 @@ public class StatisticsControllerTest {
         assertThat(response.getBody(), is(defaultStatistics));
     }
 
+    @Test
+    public void getStatisticsNotModified() {
+        ResponseEntity<StatisticsOutput> response = doRequest();
+        String etag = response.getHeaders().getETag();
+        assertThat(etag, notNullValue());
+
+        headers.setIfNoneMatch(etag);
+        response = doRequest();
+        assertThat("Status code should be 304", response.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+
+        postTransaction(new TransactionInput(3, clock.instant().toEpochMilli()));
+        response = doRequest();
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().getETag(), not(etag));
+    }
+
+    @Test
+    public void getStatisticsForWindow() {
+        ResponseEntity<StatisticsOutput> response = doRequest("/statistics?window=" + transactionTtl + "s");
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(new StatisticsOutput()));
+
+        response = doRequest("/statistics?window=" + (transactionTtl + 1) + "s");
+        assertThat("Status code should be 400", response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void getStatisticsForKey() {
+        long key = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        postTransaction(new TransactionInput(12.5, clock.instant().toEpochMilli(), key));
+
+        ResponseEntity<StatisticsOutput> response = doRequest("/statistics/" + key);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(new StatisticsOutput(12.5, 12.5, 12.5, 12.5, 1)));
+
+        response = doRequest("/statistics/merchant");
+        assertThat("Status code should be 400", response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    public void getSameSumForSingleAndStreamedTransactions() {
+        long singleKey = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        long streamedKey = singleKey ^ 1;
+        long now = clock.instant().toEpochMilli();
+        postTransaction(new TransactionInput(1.005, now, singleKey));
+        ResponseEntity<String> batch = restTemplate.exchange(getUrlForUri("/transactions/batch"), HttpMethod.POST,
+                new HttpEntity<>("[{\"amount\":1.005,\"timestamp\":" + now + ",\"key\":" + streamedKey + "}]",
+                        headers), String.class);
+        assertThat("Status code should be 200", batch.getStatusCode(), is(HttpStatus.OK));
+
+        StatisticsOutput single = doRequest("/statistics/" + singleKey).getBody();
+        StatisticsOutput streamed = doRequest("/statistics/" + streamedKey).getBody();
+        assertThat(single.getSum(), is(1.01));
+        assertThat(streamed.getSum(), is(single.getSum()));
+    }
+
+    @Test
+    public void getClusterStatistics() {
+        ResponseEntity<byte[]> partials = restTemplate.getForEntity(getUrlForUri("/statistics/partials"),
+                byte[].class);
+        assertThat("Status code should be 200", partials.getStatusCode(), is(HttpStatus.OK));
+        assertThat(partials.getHeaders().getContentType(), is(MediaType.APPLICATION_OCTET_STREAM));
+
+        postTransaction(new TransactionInput(4, clock.instant().toEpochMilli()));
+        // this node as its own peer stands in for a second node with the same transactions
+        new ClusterStatistics(statisticsService, new String[]{getUrlForUri("")}, 1000).pull();
+        StatisticsOutput statistics = statisticsService.getStatistics();
+        ResponseEntity<StatisticsOutput> response = doRequest("/statistics/cluster");
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody().getCount(), is(2 * statistics.getCount()));
+        assertThat(response.getBody().getSum(), is(2 * statistics.getSum()));
+    }
+
+    @Test
+    public void streamStatistics() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(getUrlForUri("/statistics/stream")).openConnection();
+        connection.setReadTimeout(5000);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                StandardCharsets.UTF_8))) {
+            assertThat(connection.getContentType(), startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+            for (int events = 0; events < 2; ) {
+                String line = reader.readLine();
+                assertThat("Stream should stay open", line, notNullValue());
+                if (line.startsWith("data:")) {
+                    StatisticsOutput statistics = objectMapper.readValue(line.substring(5), StatisticsOutput.class);
+                    assertThat(statistics.getCount(), greaterThanOrEqualTo(0L));
+                    events++;
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
     private StatisticsOutput calculateStatistics(List<TransactionInput> transactions) {
         if (transactions.isEmpty()) {
             return new StatisticsOutput();
         }
         double min = 0;
         double max = 0;
-        double sum = 0;
+        BigDecimal sum = BigDecimal.ZERO;
         long count = transactions.size();
 
         for (TransactionInput transaction : transactions) {
             double amount = transaction.getAmount();
-            sum += amount;
+            sum = sum.add(BigDecimal.valueOf(amount));
             if (amount <= min || min == 0)
                 min = amount;
             if (amount >= max) {
                 max = amount;
             }
         }
-        double average = sum / count;
-        return new StatisticsOutput(sum, average, max, min, count);
+        double average = sum.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP).doubleValue();
+        return new StatisticsOutput(sum.doubleValue(), average, max, min, count);
     }
 
     private void postTransaction(TransactionInput transactionInput) {
@@ -125,9 +271,13 @@ public class StatisticsControllerTest {
     }
 
     private ResponseEntity<StatisticsOutput> doRequest() {
+        return doRequest("/statistics");
+    }
+
+    private ResponseEntity<StatisticsOutput> doRequest(String uri) {
         HttpEntity<TransactionInput> httpEntity = new HttpEntity<>(headers);
         return restTemplate.exchange(
-                getUrlForUri("/statistics"),
+                getUrlForUri(uri),
                 HttpMethod.GET,
                 httpEntity,
                 StatisticsOutput.class);
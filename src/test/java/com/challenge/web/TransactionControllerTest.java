@@ -1,6 +1,7 @@
 package com.challenge.web;
 
 import com.challenge.StatisticsApplication;
+import com.challenge.transfer.TransactionBatchOutput;
 import com.challenge.transfer.TransactionInput;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,6 +15,8 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -71,6 +74,51 @@ public class TransactionControllerTest {
         assertThat("Status code should be 400",response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
     }
 
+    @Test
+    public void postTransactionBatch() {
+        List<TransactionInput> transactions = Arrays.asList(
+                new TransactionInput(54.10, Instant.now().toEpochMilli()),
+                new TransactionInput(12.00, Instant.now().minus(5, ChronoUnit.SECONDS).toEpochMilli()),
+                new TransactionInput(10.00, Instant.now().minus(61, ChronoUnit.SECONDS).toEpochMilli()),
+                new TransactionInput(-3.2, Instant.now().toEpochMilli()));
+        ResponseEntity<TransactionBatchOutput> response = restTemplate.exchange(
+                url + "/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(transactions, headers),
+                TransactionBatchOutput.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(new TransactionBatchOutput(2, 1, 1)));
+    }
+
+    @Test
+    public void postNdjsonTransactionBatch() {
+        String body = "{\"amount\": 54.10, \"timestamp\": " + Instant.now().toEpochMilli() + "}\n"
+                + "{\"amount\": 0, \"timestamp\": " + Instant.now().toEpochMilli() + "}\n"
+                + "{\"amount\": 12.00, \"timestamp\": 1}\n"
+                + "{\"timestamp\": " + Instant.now().toEpochMilli() + ", \"amount\": \"1.5\", \"id\": [1, 2]}\n";
+        HttpHeaders ndjsonHeaders = new HttpHeaders();
+        ndjsonHeaders.add("Content-Type", TransactionController.APPLICATION_NDJSON_VALUE);
+        ResponseEntity<TransactionBatchOutput> response = restTemplate.exchange(
+                url + "/batch",
+                HttpMethod.POST,
+                new HttpEntity<>(body, ndjsonHeaders),
+                TransactionBatchOutput.class);
+        assertThat("Status code should be 200", response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), is(new TransactionBatchOutput(2, 1, 1)));
+    }
+
+    @Test
+    public void postMalformedNdjsonTransactionBatch() {
+        HttpHeaders ndjsonHeaders = new HttpHeaders();
+        ndjsonHeaders.add("Content-Type", TransactionController.APPLICATION_NDJSON_VALUE);
+        ResponseEntity<String> response = restTemplate.exchange(
+                url + "/batch",
+                HttpMethod.POST,
+                new HttpEntity<>("{\"amount\": ", ndjsonHeaders),
+                String.class);
+        assertThat("Status code should be 400", response.getStatusCode(), is(HttpStatus.BAD_REQUEST));
+    }
+
     private ResponseEntity<Void> doRequest(TransactionInput transaction) {
         HttpEntity<TransactionInput> httpEntity = getTransactionInputHttpEntity(transaction);
         return restTemplate.exchange(
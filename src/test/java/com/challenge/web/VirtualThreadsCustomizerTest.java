@@ -0,0 +1,40 @@
+package com.challenge.web;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class VirtualThreadsCustomizerTest {
+
+    @Test
+    public void testVirtualThreadPerTaskExecutor() throws ExecutionException, InterruptedException {
+        boolean virtualThreads = hasVirtualThreads();
+        ExecutorService executor;
+        try {
+            executor = VirtualThreadsCustomizer.newVirtualThreadPerTaskExecutor("test-virtual-");
+        } catch (IllegalStateException e) {
+            assertThat("Virtual threads should be available", virtualThreads, is(false));
+            return;
+        }
+        assertThat("Virtual threads should not be available", virtualThreads, is(true));
+        try {
+            assertThat(executor.submit(() -> Thread.currentThread().getName()).get(), startsWith("test-virtual-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean hasVirtualThreads() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}